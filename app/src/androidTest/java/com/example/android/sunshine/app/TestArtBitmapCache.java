@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import java.io.File;
+
+/*
+    Checks what the art cache hands back from memory and from the built in art, and that it
+    doesn't wait for an art pack to download.
+ */
+public class TestArtBitmapCache extends AndroidTestCase {
+
+    private static final int SIZE = 64;
+
+    private File mDiskCacheDir;
+    private ArtBitmapCache mCache;
+    private String mArtPack;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDiskCacheDir = new File(mContext.getCacheDir(), "test-art");
+        deleteDiskCache();
+        mCache = new ArtBitmapCache(mContext, mDiskCacheDir, 1024);
+        mArtPack = getPrefs().getString(mContext.getString(R.string.pref_art_pack_key), null);
+        setArtPack(mContext.getString(R.string.pref_art_pack_sunshine));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        setArtPack(mArtPack);
+        deleteDiskCache();
+        super.tearDown();
+    }
+
+    public void testBuiltInArt() {
+        Bitmap first = mCache.get(800, SIZE, SIZE, false);
+        assertNotNull("Error: no art for clear skies", first);
+        assertTrue("Error: the art is bigger than asked for",
+                first.getWidth() <= SIZE && first.getHeight() <= SIZE);
+        assertEquals("Error: wrong number of misses", 1, mCache.getMissCount());
+
+        assertSame("Error: the art wasn't kept in memory", first, mCache.get(800, SIZE, SIZE, false));
+        assertSame("Error: the same kind of weather got different art",
+                first, mCache.get(800, SIZE, SIZE, false));
+        assertEquals("Error: wrong number of memory hits", 2, mCache.getMemoryHitCount());
+
+        assertNotSame("Error: a different size shared the art",
+                first, mCache.get(800, SIZE / 2, SIZE / 2, false));
+        assertNull("Error: art was made up for an unknown condition",
+                mCache.get(999, SIZE, SIZE, false));
+    }
+
+    public void testPrescaledArt() {
+        for (int weatherId : ArtBitmapCache.ART_WEATHER_IDS) {
+            String name = mContext.getResources().getResourceEntryName(
+                    Utility.getArtResourceForWeatherCondition(weatherId));
+            assertTrue("Error: " + name + " wasn't pre-scaled for the widget's rows",
+                    mContext.getResources().getIdentifier(name + "_list", "drawable",
+                            mContext.getPackageName()) != 0);
+        }
+        int listIcon = mContext.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        Bitmap art = mCache.get(801, listIcon, listIcon, false);
+        assertEquals("Error: widget row art is the wrong size", listIcon, art.getWidth());
+    }
+
+    public void testGrayscale() {
+        Bitmap gray = mCache.get(500, SIZE, SIZE, true);
+        assertNotSame("Error: grayscale shared the colour art",
+                mCache.get(500, SIZE, SIZE, false), gray);
+        for (int x = 0; x < gray.getWidth(); x += 4) {
+            for (int y = 0; y < gray.getHeight(); y += 4) {
+                int pixel = gray.getPixel(x, y);
+                assertTrue("Error: colour left at " + x + "," + y,
+                        Math.abs(Color.red(pixel) - Color.green(pixel)) <= 1
+                                && Math.abs(Color.green(pixel) - Color.blue(pixel)) <= 1);
+            }
+        }
+    }
+
+    public void testArtPackDoesNotBlock() {
+        setArtPack(mContext.getString(R.string.pref_art_pack_cute_dogs));
+        // Nothing is cached yet, so this has to come from the built in art rather than wait.
+        Bitmap art = mCache.get(200, SIZE, SIZE, false);
+        assertNotNull("Error: nothing to show while the art pack downloads", art);
+        assertEquals("Error: wrong number of misses", 1, mCache.getMissCount());
+    }
+
+    private SharedPreferences getPrefs() {
+        return PreferenceManager.getDefaultSharedPreferences(mContext);
+    }
+
+    private void setArtPack(String artPack) {
+        String key = mContext.getString(R.string.pref_art_pack_key);
+        if (artPack == null) {
+            getPrefs().edit().remove(key).commit();
+        } else {
+            getPrefs().edit().putString(key, artPack).commit();
+        }
+    }
+
+    private void deleteDiskCache() {
+        File[] files = mDiskCacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDiskCacheDir.delete();
+    }
+}
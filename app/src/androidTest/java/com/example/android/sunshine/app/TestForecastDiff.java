@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.view.ViewGroup;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Checks how many rows a new forecast rebinds, for a sync that brings nothing new, the day
+    moving on by one, and a whole new forecast, and that the notifications the list gets turn
+    the rows it had into the rows it should have.
+ */
+public class TestForecastDiff extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int DAYS = 14;
+
+    private ForecastFormatter mFormatter;
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFormatter = new ForecastFormatter(mContext);
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+    }
+
+    public void testNoOpSync() {
+        ForecastModel before = buildModel(0, 0, null);
+        ForecastModel after = buildModel(0, 0, before);
+
+        RowTracker tracker = dispatch(before, after);
+        assertEquals("Error: a sync that changed nothing rebound rows", 0, tracker.rebound);
+        assertEquals("Error: a sync that changed nothing removed rows", 0, tracker.removed);
+    }
+
+    public void testOneDayShift() {
+        // Yesterday's forecast, still showing from yesterday, then today's.
+        ForecastModel before = buildModel(-1, 0, null);
+        ForecastModel after = buildModel(0, 0, before);
+
+        RowTracker tracker = dispatch(before, after);
+        assertEquals("Error: wrong number of days removed", 1, tracker.removed);
+        // The new last day, and today moving up into the first row.
+        assertEquals("Error: wrong number of rows rebound", 2, tracker.rebound);
+    }
+
+    public void testFullReplacement() {
+        ForecastModel before = buildModel(0, 0, null);
+        // Another location: the same days, all stored under new _IDs.
+        ForecastModel after = buildModel(0, 1000, before);
+
+        RowTracker tracker = dispatch(before, after);
+        assertEquals("Error: wrong number of days removed", DAYS, tracker.removed);
+        assertEquals("Error: wrong number of rows rebound", DAYS, tracker.rebound);
+    }
+
+    public void testOnlyAppliesToItsOwnModel() {
+        ForecastModel before = buildModel(0, 0, null);
+        ForecastModel after = buildModel(0, 0, before);
+        assertTrue("Error: the changes don't apply to the model they came from",
+                after.getChanges().isFrom(before));
+        assertFalse("Error: the changes apply to some other model",
+                after.getChanges().isFrom(buildModel(0, 0, null)));
+    }
+
+    /*
+        A forecast of DAYS days, starting firstDay days from today, with each day's _ID worked
+        out from its date so that the same day gets the same _ID in every model.
+     */
+    private ForecastModel buildModel(int firstDay, long idOffset, ForecastModel previous) {
+        MatrixCursor cursor = new MatrixCursor(ForecastLoader.FORECAST_COLUMNS);
+        for (int i = 0; i < DAYS; i++) {
+            int day = firstDay + i;
+            cursor.addRow(new Object[]{
+                    idOffset + 100 + day,
+                    mToday + day * DAY_IN_MILLIS,
+                    "Clear",
+                    20.0 + day,
+                    10.0 + day,
+                    "99705",
+                    800 + (day % 3),
+                    "64.7488",
+                    "-147.353"
+            });
+        }
+        try {
+            return ForecastModel.fromCursor(cursor, mFormatter, previous);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private RowTracker dispatch(ForecastModel before, ForecastModel after) {
+        ForecastDiff changes = after.getChanges();
+        assertNotNull("Error: no changes worked out", changes);
+        assertTrue("Error: the changes aren't from the model before", changes.isFrom(before));
+
+        RowTracker tracker = new RowTracker(before, after);
+        EmptyAdapter adapter = new EmptyAdapter();
+        adapter.registerAdapterDataObserver(tracker);
+        changes.dispatchTo(adapter);
+
+        List<Long> expected = new ArrayList<Long>();
+        for (int i = 0; i < after.getCount(); i++) {
+            expected.add(after.getId(i));
+        }
+        assertEquals("Error: the notifications don't lead to the new forecast", expected, tracker.ids);
+        assertEquals("Error: rebinds don't add up",
+                changes.getInsertedCount() + changes.getChangedCount(), tracker.rebound);
+        return tracker;
+    }
+
+    /*
+        Plays the notifications a list would get onto the _IDs of the rows it's showing, and
+        counts the rows it would have to bind.
+     */
+    private static class RowTracker extends RecyclerView.AdapterDataObserver {
+        final List<Long> ids = new ArrayList<Long>();
+        final ForecastModel after;
+        int rebound;
+        int removed;
+
+        RowTracker(ForecastModel before, ForecastModel after) {
+            for (int i = 0; i < before.getCount(); i++) {
+                ids.add(before.getId(i));
+            }
+            this.after = after;
+        }
+
+        @Override
+        public void onChanged() {
+            fail("Error: the whole list was rebound");
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            rebound += itemCount;
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            for (int i = positionStart; i < positionStart + itemCount; i++) {
+                // Inserted rows come from the new forecast, at the position they end up in.
+                ids.add(i, after.getId(i));
+            }
+            rebound += itemCount;
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            for (int i = 0; i < itemCount; i++) {
+                ids.remove(positionStart);
+            }
+            removed += itemCount;
+        }
+    }
+
+    private static class EmptyAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return null;
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemCount() {
+            return 0;
+        }
+    }
+}
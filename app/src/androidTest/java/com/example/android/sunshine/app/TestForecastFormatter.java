@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.os.Debug;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Checks that the formatter says the same as Utility, follows a change of units, and that once
+    it has seen a forecast, formatting the forecast again allocates nothing.
+ */
+public class TestForecastFormatter extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int DAYS = 14;
+    private static final int BINDS = 10;
+
+    private static final double[] TEMPERATURES = {-40, -12.5, -2.5, -0.3, 0, 0.49, 0.5, 7.2,
+            19.5, 21.49, 35, 48.9};
+
+    private String mUnits;
+    private long[] mDates;
+    private double[] mHighs;
+    private double[] mLows;
+    private int[] mWeatherIds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mUnits = getPrefs().getString(mContext.getString(R.string.pref_units_key), null);
+        setUnits(mContext.getString(R.string.pref_units_metric));
+
+        mDates = new long[DAYS];
+        mHighs = new double[DAYS];
+        mLows = new double[DAYS];
+        mWeatherIds = new int[DAYS];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < DAYS; i++) {
+            mDates[i] = now + i * DAY_IN_MILLIS;
+            mHighs[i] = 20 + i * 0.7;
+            mLows[i] = 5 - i * 0.6;
+            mWeatherIds[i] = ArtBitmapCache.ART_WEATHER_IDS[i % ArtBitmapCache.ART_WEATHER_IDS.length];
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        setUnits(mUnits);
+        super.tearDown();
+    }
+
+    public void testMatchesUtility() {
+        ForecastFormatter formatter = new ForecastFormatter(mContext);
+        // Twice over, so that the second time round everything comes from the formatter's memory.
+        for (int pass = 0; pass < 2; pass++) {
+            for (long date : mDates) {
+                assertEquals("Error: wrong day for " + date,
+                        Utility.getFriendlyDayString(mContext, date, false),
+                        formatter.getFriendlyDayString(date, false));
+                assertEquals("Error: wrong long day for " + date,
+                        Utility.getFriendlyDayString(mContext, date, true),
+                        formatter.getFriendlyDayString(date, true));
+            }
+            for (int weatherId : mWeatherIds) {
+                assertEquals("Error: wrong condition for " + weatherId,
+                        Utility.getStringForWeatherCondition(mContext, weatherId),
+                        formatter.getCondition(weatherId));
+            }
+            assertTemperaturesMatch(formatter);
+        }
+
+        setUnits(mContext.getString(R.string.pref_units_imperial));
+        // The formatter hears about the change on the main thread.
+        final ForecastFormatter imperialFormatter = formatter;
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return Utility.formatTemperature(mContext, 0)
+                        .equals(imperialFormatter.formatTemperature(0));
+            }
+        }.run();
+        assertTemperaturesMatch(formatter);
+    }
+
+    public void testNoAllocationsPerBind() {
+        ForecastFormatter formatter = new ForecastFormatter(mContext);
+        bindAll(formatter);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < BINDS; i++) {
+            bindAll(formatter);
+        }
+        Debug.stopAllocCounting();
+
+        assertEquals("Error: binding a forecast that was already formatted allocated",
+                0, Debug.getThreadAllocCount());
+    }
+
+    /*
+        Everything ForecastAdapter.onBindViewHolder asks the formatter for, for every day.
+     */
+    private void bindAll(ForecastFormatter formatter) {
+        for (int i = 0; i < DAYS; i++) {
+            formatter.getFriendlyDayString(mDates[i], i == 0);
+            formatter.getCondition(mWeatherIds[i]);
+            formatter.describeCondition(mWeatherIds[i]);
+            formatter.formatTemperature(mHighs[i]);
+            formatter.describeHigh(mHighs[i]);
+            formatter.formatTemperature(mLows[i]);
+            formatter.describeLow(mLows[i]);
+        }
+    }
+
+    private void assertTemperaturesMatch(ForecastFormatter formatter) {
+        for (double temperature : TEMPERATURES) {
+            String expected = Utility.formatTemperature(mContext, temperature);
+            assertEquals("Error: wrong temperature for " + temperature,
+                    expected, formatter.formatTemperature(temperature));
+            assertEquals("Error: wrong high description for " + temperature,
+                    mContext.getString(R.string.a11y_high_temp, expected),
+                    formatter.describeHigh(temperature));
+        }
+    }
+
+    private SharedPreferences getPrefs() {
+        return PreferenceManager.getDefaultSharedPreferences(mContext);
+    }
+
+    private void setUnits(String units) {
+        String key = mContext.getString(R.string.pref_units_key);
+        if (units == null) {
+            getPrefs().edit().remove(key).commit();
+        } else {
+            getPrefs().edit().putString(key, units).commit();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/*
+    Checks that the model the list binds from holds what the list used to read and format from
+    the Cursor for every row.
+ */
+public class TestForecastLoader extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int DAYS = 14;
+    private static final int[] WEATHER_IDS = {200, 300, 501, 511, 600, 741, 800, 801, 804, 906};
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    public void testModelMatchesForecast() {
+        String locationSetting = Utility.getPreferredLocation(mContext);
+        ContentValues location = new ContentValues();
+        location.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        location.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -147.353);
+        long locationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI, location));
+
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues[] days = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            days[i] = new ContentValues();
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_DATE, today + i * DAY_IN_MILLIS);
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 80);
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1000);
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 90);
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 12.5 + i);
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, -3.5 + i);
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Weather");
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                    WEATHER_IDS[i % WEATHER_IDS.length]);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, days);
+
+        ForecastModel model = new ForecastLoader(mContext).loadInBackground();
+        assertEquals("Error: wrong number of days in the model", DAYS, model.getCount());
+        assertEquals("Error: wrong latitude", "64.7488", model.getCoordLat());
+        assertFalse("Error: a new model is already stale",
+                model.isStale(System.currentTimeMillis()));
+        for (int i = 0; i < DAYS; i++) {
+            long date = days[i].getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            int weatherId = days[i].getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+            double high = days[i].getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
+            double low = days[i].getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
+            String formattedHigh = Utility.formatTemperature(mContext, high);
+
+            assertEquals("Error: wrong date in row " + i, date, model.getDate(i));
+            assertEquals("Error: row " + i + " isn't where its date is", i, model.indexOfDate(date));
+            assertEquals("Error: wrong weather in row " + i, weatherId, model.getWeatherId(i));
+            assertEquals("Error: wrong high in row " + i, (float) high, model.getHigh(i));
+            assertEquals("Error: wrong low in row " + i, (float) low, model.getLow(i));
+            assertEquals("Error: wrong day in row " + i,
+                    Utility.getFriendlyDayString(mContext, date, false), model.getDay(i, false));
+            assertEquals("Error: wrong long day in row " + i,
+                    Utility.getFriendlyDayString(mContext, date, i == 0), model.getDay(i, true));
+            assertEquals("Error: wrong condition in row " + i,
+                    Utility.getStringForWeatherCondition(mContext, weatherId),
+                    model.getCondition(i));
+            assertEquals("Error: wrong high in row " + i, formattedHigh, model.getFormattedHigh(i));
+            assertEquals("Error: wrong high description in row " + i,
+                    mContext.getString(R.string.a11y_high_temp, formattedHigh),
+                    model.getHighDescription(i));
+            assertEquals("Error: wrong low in row " + i,
+                    Utility.formatTemperature(mContext, low), model.getFormattedLow(i));
+        }
+        assertEquals("Error: found a date that isn't in the forecast",
+                -1, model.indexOfDate(today - DAY_IN_MILLIS));
+    }
+
+    public void testEmptyModelWithoutForecast() {
+        ForecastModel model = new ForecastLoader(mContext).loadInBackground();
+        assertEquals("Error: a forecast was made up for an empty database", 0, model.getCount());
+        assertNull("Error: a location was made up for an empty database", model.getCoordLat());
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.Build;
+import android.support.v7.widget.RecyclerView;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/*
+    Flings through a 1,000 day forecast and records how long binding, layout, the scroll listeners
+    and each frame took.  The report is logged on a single line starting with REPORT_PREFIX and
+    written to REPORT_FILE in the app's external files directory, and the test fails if the list
+    has got slower than the budgets below.  They are generous, so that only a real regression
+    trips them on a slow emulator.
+ */
+public class TestScrollBenchmark extends ActivityInstrumentationTestCase2<MainActivity> {
+
+    public static final String LOG_TAG = TestScrollBenchmark.class.getSimpleName();
+    public static final String REPORT_PREFIX = "SCROLL_BENCHMARK ";
+    public static final String REPORT_FILE = "scroll_benchmark.json";
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int DAYS = 1000;
+    private static final int[] WEATHER_IDS = {200, 300, 501, 511, 600, 741, 800, 801, 804};
+
+    private static final int FLINGS = 6;
+    private static final int FLING_VELOCITY = 8000;
+    private static final long FLING_TIMEOUT_MILLIS = 10000;
+    private static final int SAMPLES = 10000;
+
+    private static final double BIND_P90_BUDGET_MS = 4;
+    private static final double LAYOUT_P90_BUDGET_MS = 12;
+    private static final double SCROLL_CALLBACKS_P90_BUDGET_MS = 2;
+    private static final double JANKY_FRAMES_BUDGET_PERCENT = 25;
+
+    public TestScrollBenchmark() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Context context = getInstrumentation().getTargetContext();
+        deleteAll(context);
+        insertForecast(context);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        deleteAll(getInstrumentation().getTargetContext());
+    }
+
+    public void testFlingBenchmark() throws Throwable {
+        MainActivity activity = getActivity();
+        final ForecastFragment fragment = (ForecastFragment) activity.getSupportFragmentManager()
+                .findFragmentById(R.id.fragment_forecast);
+        final RecyclerView recyclerView =
+                (RecyclerView) activity.findViewById(R.id.recyclerview_forecast);
+        new PollingCheck(FLING_TIMEOUT_MILLIS) {
+            @Override
+            protected boolean check() {
+                return recyclerView.getAdapter().getItemCount() == DAYS
+                        && recyclerView.getChildCount() > 0;
+            }
+        }.run();
+
+        final ScrollMetrics metrics = new ScrollMetrics(SAMPLES);
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                fragment.setScrollMetrics(metrics);
+                metrics.startFrames();
+            }
+        });
+        for (int i = 0; i < FLINGS; i++) {
+            // Down the list, then back up to where it started.
+            final int velocity = i % 2 == 0 ? FLING_VELOCITY : -FLING_VELOCITY;
+            runTestOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    recyclerView.fling(0, velocity);
+                }
+            });
+            getInstrumentation().waitForIdleSync();
+            new PollingCheck(FLING_TIMEOUT_MILLIS) {
+                @Override
+                protected boolean check() {
+                    return recyclerView.getScrollState() == RecyclerView.SCROLL_STATE_IDLE;
+                }
+            }.run();
+        }
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                metrics.stopFrames();
+                fragment.setScrollMetrics(null);
+            }
+        });
+
+        JSONObject report = metrics.toJson();
+        report.put("rows", DAYS);
+        report.put("flings", FLINGS);
+        report.put("sdk", Build.VERSION.SDK_INT);
+        report.put("device", Build.MODEL);
+        Log.i(LOG_TAG, REPORT_PREFIX + report.toString());
+        writeReport(activity, report);
+
+        JSONObject binds = report.getJSONObject("bind");
+        assertTrue("Error: no rows were bound during the flings", binds.getInt("count") > 0);
+        assertTrue("Error: binding a row got slower: " + binds,
+                binds.getDouble("p90Ms") <= BIND_P90_BUDGET_MS);
+        JSONObject layouts = report.getJSONObject("layout");
+        assertTrue("Error: laying out the list got slower: " + layouts,
+                layouts.getDouble("p90Ms") <= LAYOUT_P90_BUDGET_MS);
+        JSONObject scrollCallbacks = report.getJSONObject("scrollCallbacks");
+        assertTrue("Error: the scroll listeners got slower: " + scrollCallbacks,
+                scrollCallbacks.getDouble("p90Ms") <= SCROLL_CALLBACKS_P90_BUDGET_MS);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            JSONObject frames = report.getJSONObject("frames");
+            assertTrue("Error: no frames were recorded", frames.getInt("count") > 0);
+            assertTrue("Error: too many frames were janky: " + frames,
+                    frames.getDouble("jankyPercent") <= JANKY_FRAMES_BUDGET_PERCENT);
+        }
+    }
+
+    private static void writeReport(Context context, JSONObject report) {
+        File dir = context.getExternalFilesDir(null);
+        if (dir == null) {
+            dir = context.getFilesDir();
+        }
+        File file = new File(dir, REPORT_FILE);
+        FileWriter writer = null;
+        try {
+            writer = new FileWriter(file);
+            writer.write(report.toString());
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing the report to " + file, e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // Nothing more to be done.
+                }
+            }
+        }
+    }
+
+    private static void insertForecast(Context context) {
+        ContentValues location = new ContentValues();
+        location.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                Utility.getPreferredLocation(context));
+        location.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -147.353);
+        long locationId = ContentUris.parseId(context.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI, location));
+
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues[] days = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            days[i] = new ContentValues();
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_DATE, today + i * DAY_IN_MILLIS);
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 80);
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1000);
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 90);
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 10 + (i * 7) % 30 + 0.5);
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, -10 + (i * 3) % 20 + 0.5);
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Weather");
+            days[i].put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                    WEATHER_IDS[i % WEATHER_IDS.length]);
+        }
+        context.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, days);
+    }
+
+    private static void deleteAll(Context context) {
+        context.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        context.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+}
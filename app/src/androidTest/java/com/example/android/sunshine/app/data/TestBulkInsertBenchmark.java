@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.LinkedHashSet;
+
+/*
+    Not a pass/fail test: times inserting a forecast into an empty weather table the way
+    bulkInsert used to (a ContentValues-driven db.insert per row) against the upsert bulkInsert
+    now runs, and logs rows per second for each.  Both write to the same SQLiteDatabase in one
+    transaction, without going through a ContentResolver, so neither includes the provider's
+    cache invalidation or notifications.
+ */
+public class TestBulkInsertBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestBulkInsertBenchmark.class.getSimpleName();
+
+    private static final int[] ROW_COUNTS = {14, 140, 1400};
+    private static final int ITERATIONS = 5;
+
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllWeather();
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+        mLocationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllWeather();
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testBulkInsertBenchmark() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        WeatherProvider provider = (WeatherProvider) client.getLocalContentProvider();
+
+        // warm up both paths so we don't measure statement caches filling or class loading
+        legacyBulkInsert(db, createWeatherValues(14));
+        deleteAllWeather();
+        upsert(provider, db, createWeatherValues(14));
+        deleteAllWeather();
+
+        for (int rowCount : ROW_COUNTS) {
+            long legacyNanos = 0;
+            long compiledNanos = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                ContentValues[] values = createWeatherValues(rowCount);
+                long start = System.nanoTime();
+                int inserted = legacyBulkInsert(db, values);
+                legacyNanos += System.nanoTime() - start;
+                assertEquals("Error: legacy path didn't insert every row", rowCount, inserted);
+                deleteAllWeather();
+
+                values = createWeatherValues(rowCount);
+                start = System.nanoTime();
+                inserted = upsert(provider, db, values);
+                compiledNanos += System.nanoTime() - start;
+                assertEquals("Error: compiled path didn't insert every row", rowCount, inserted);
+                deleteAllWeather();
+            }
+
+            Log.i(LOG_TAG, rowCount + " rows:"
+                    + " db.insert per row " + rowsPerSecond(rowCount * ITERATIONS, legacyNanos)
+                    + " rows/s, upsert (one query for the location's existing days, then"
+                    + " compiled inserts) " + rowsPerSecond(rowCount * ITERATIONS, compiledNanos)
+                    + " rows/s");
+        }
+        client.release();
+        dbHelper.close();
+    }
+
+    /*
+        What bulkInsert now does, short of announcing the change.
+     */
+    private static int upsert(WeatherProvider provider, SQLiteDatabase db,
+                              ContentValues[] values) {
+        return provider.upsertWeather(db, values, new LinkedHashSet<Uri>());
+    }
+
+    /*
+        What WeatherProvider.bulkInsert did before it had compiled statements.
+     */
+    private static int legacyBulkInsert(SQLiteDatabase db, ContentValues[] values) {
+        db.beginTransaction();
+        int returnCount = 0;
+        try {
+            for (ContentValues value : values) {
+                long dateValue = value.getAsLong(WeatherEntry.COLUMN_DATE);
+                value.put(WeatherEntry.COLUMN_DATE, WeatherContract.normalizeDate(dateValue));
+                long _id = db.insert(WeatherEntry.TABLE_NAME, null, value);
+                if (_id != -1) {
+                    returnCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return returnCount;
+    }
+
+    private ContentValues[] createWeatherValues(int rowCount) {
+        long millisecondsInADay = 1000 * 60 * 60 * 24;
+        ContentValues[] values = new ContentValues[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            values[i] = TestUtilities.createWeatherValues(mLocationRowId);
+            values[i].put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + i * millisecondsInADay);
+            values[i].put(WeatherEntry.COLUMN_MAX_TEMP, 75 + i % 10);
+        }
+        return values;
+    }
+
+    private void deleteAllWeather() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+    }
+
+    private static long rowsPerSecond(int rows, long nanos) {
+        return nanos == 0 ? 0 : rows * 1000000000L / nanos;
+    }
+}
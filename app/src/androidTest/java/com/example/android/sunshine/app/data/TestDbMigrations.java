@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+    Builds a database as each earlier version of the app left it, opens it with the current
+    WeatherDbHelper, and checks that the cached rows survived and that the schema ended up exactly
+    as a fresh install would have it.
+
+    When you bump DATABASE_VERSION, add the schema you are leaving behind to HISTORICAL_SCHEMAS.
+ */
+public class TestDbMigrations extends AndroidTestCase {
+
+    // The CREATE statements of each released schema, verbatim, indexed by version.
+    private static final String[][] HISTORICAL_SCHEMAS = new String[WeatherDbHelper.DATABASE_VERSION][];
+
+    private static final String LOCATION_V2 = "CREATE TABLE location (" +
+            "_id INTEGER PRIMARY KEY," +
+            "location_setting TEXT UNIQUE NOT NULL, " +
+            "city_name TEXT NOT NULL, " +
+            "coord_lat REAL NOT NULL, " +
+            "coord_long REAL NOT NULL " +
+            " );";
+
+    private static final String LOCATION_V3 = "CREATE TABLE location (" +
+            "_id INTEGER PRIMARY KEY," +
+            "location_setting TEXT UNIQUE NOT NULL, " +
+            "city_name TEXT NOT NULL, " +
+            "coord_lat REAL NOT NULL, " +
+            "coord_long REAL NOT NULL, " +
+            "etag TEXT, " +
+            "last_modified TEXT, " +
+            "fresh_until INTEGER NOT NULL DEFAULT 0 " +
+            " );";
+
+    private static final String WEATHER_V2 = "CREATE TABLE weather (" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "location_id INTEGER NOT NULL, " +
+            "date INTEGER NOT NULL, " +
+            "short_desc TEXT NOT NULL, " +
+            "weather_id INTEGER NOT NULL," +
+            "min REAL NOT NULL, " +
+            "max REAL NOT NULL, " +
+            "humidity REAL NOT NULL, " +
+            "pressure REAL NOT NULL, " +
+            "wind REAL NOT NULL, " +
+            "degrees REAL NOT NULL, " +
+            " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+            " UNIQUE (date, location_id) ON CONFLICT REPLACE);";
+
+    static {
+        HISTORICAL_SCHEMAS[2] = new String[]{LOCATION_V2, WEATHER_V2};
+        HISTORICAL_SCHEMAS[3] = new String[]{LOCATION_V3, WEATHER_V2};
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testUpgradeFromEveryVersion() {
+        Map<String, String> freshSchema = describeFreshSchema();
+
+        for (int version = WeatherDbHelper.OLDEST_MIGRATABLE_VERSION;
+             version < WeatherDbHelper.DATABASE_VERSION; version++) {
+            assertNotNull("Error: no schema recorded for version " + version,
+                    HISTORICAL_SCHEMAS[version]);
+            mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+
+            SQLiteDatabase old = mContext.openOrCreateDatabase(WeatherDbHelper.DATABASE_NAME, 0, null);
+            for (String sql : HISTORICAL_SCHEMAS[version]) {
+                old.execSQL(sql);
+            }
+            old.setVersion(version);
+            long locationRowId = old.insert(LocationEntry.TABLE_NAME, null,
+                    TestUtilities.createNorthPoleLocationValues());
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            long weatherRowId = old.insert(WeatherEntry.TABLE_NAME, null, weatherValues);
+            old.close();
+
+            WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            assertEquals("Error: wrong version after upgrading from " + version,
+                    WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+
+            Cursor cursor = db.query(LocationEntry.TABLE_NAME, null, null, null, null, null, null);
+            TestUtilities.validateCursor("Error: location lost upgrading from " + version,
+                    cursor, TestUtilities.createNorthPoleLocationValues());
+            cursor = db.query(WeatherEntry.TABLE_NAME, null, null, null, null, null, null);
+            assertTrue("Error: weather lost upgrading from " + version, cursor.moveToFirst());
+            assertEquals("Error: weather _ID changed upgrading from " + version, weatherRowId,
+                    cursor.getLong(cursor.getColumnIndex(WeatherEntry._ID)));
+            TestUtilities.validateCurrentRecord("Error: weather changed upgrading from " + version,
+                    cursor, weatherValues);
+            cursor.close();
+
+            assertEquals("Error: schema upgraded from " + version + " differs from a fresh one",
+                    freshSchema, describeSchema(db));
+            dbHelper.close();
+        }
+    }
+
+    public void testUpgradeFromUnknownVersionStartsOver() {
+        SQLiteDatabase old = mContext.openOrCreateDatabase(WeatherDbHelper.DATABASE_NAME, 0, null);
+        old.execSQL("CREATE TABLE weather (_id INTEGER PRIMARY KEY, date TEXT)");
+        old.setVersion(WeatherDbHelper.OLDEST_MIGRATABLE_VERSION - 1);
+        old.close();
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        assertEquals("Error: unknown schema was not replaced",
+                describeFreshSchema(), describeSchema(db));
+        dbHelper.close();
+    }
+
+    private Map<String, String> describeFreshSchema() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        Map<String, String> schema = describeSchema(dbHelper.getReadableDatabase());
+        dbHelper.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        return schema;
+    }
+
+    /*
+        Every table's columns (name, type, NOT NULL, default and primary key) and every index's
+        columns.  The CREATE statements themselves can't be compared, since ALTER TABLE rewrites
+        them differently than onCreate writes them.
+     */
+    private static Map<String, String> describeSchema(SQLiteDatabase db) {
+        Map<String, String> schema = new TreeMap<String, String>();
+        Cursor master = db.rawQuery("SELECT type, name FROM sqlite_master"
+                + " WHERE name NOT LIKE 'sqlite_%' AND name != 'android_metadata'", null);
+        try {
+            while (master.moveToNext()) {
+                String type = master.getString(0);
+                String name = master.getString(1);
+                StringBuilder description = new StringBuilder();
+                Cursor info = db.rawQuery("PRAGMA " + ("index".equals(type) ? "index_info" : "table_info")
+                        + "(" + name + ")", null);
+                try {
+                    while (info.moveToNext()) {
+                        for (int i = 0; i < info.getColumnCount(); i++) {
+                            description.append(info.getString(i)).append(i + 1 < info.getColumnCount() ? "," : ";");
+                        }
+                    }
+                } finally {
+                    info.close();
+                }
+                schema.put(type + " " + name, description.toString());
+            }
+        } finally {
+            master.close();
+        }
+        return schema;
+    }
+}
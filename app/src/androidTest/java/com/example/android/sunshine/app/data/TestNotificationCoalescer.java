@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Checks which URIs the coalescer keeps, and counts what the provider actually sends during
+    something shaped like a sync.
+ */
+public class TestNotificationCoalescer extends AndroidTestCase {
+
+    private static final Uri DAY = WeatherEntry.buildWeatherLocationWithDate(
+            TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+    private static final Uri LOCATION_WEATHER =
+            WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+    private static final Uri OTHER_LOCATION_WEATHER = WeatherEntry.buildWeatherLocation("94043");
+
+    public void testWithoutDescendants() {
+        assertEquals("Error: a day wasn't folded into its location",
+                Arrays.asList(LOCATION_WEATHER),
+                NotificationCoalescer.withoutDescendants(Arrays.asList(DAY, LOCATION_WEATHER)));
+
+        // What a sync's batch changes: days of a location, then the delete of days gone by
+        assertEquals("Error: a weather delete didn't cover every location's days",
+                Arrays.asList(WeatherEntry.CONTENT_URI),
+                NotificationCoalescer.withoutDescendants(
+                        Arrays.asList(DAY, OTHER_LOCATION_WEATHER, WeatherEntry.CONTENT_URI)));
+
+        assertEquals("Error: unrelated URIs weren't all kept",
+                Arrays.asList(DAY, OTHER_LOCATION_WEATHER, LocationEntry.CONTENT_URI),
+                NotificationCoalescer.withoutDescendants(
+                        Arrays.asList(DAY, OTHER_LOCATION_WEATHER, LocationEntry.CONTENT_URI)));
+
+        Uri withStartDate = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+        List<Uri> kept = NotificationCoalescer.withoutDescendants(
+                Arrays.asList(withStartDate, LOCATION_WEATHER));
+        assertEquals("Error: URIs differing only in their query weren't merged",
+                Arrays.asList(LOCATION_WEATHER), kept);
+    }
+
+    public void testCounts() {
+        NotificationCoalescer coalescer = new NotificationCoalescer(
+                mContext.getContentResolver(), NotificationCoalescer.DEFAULT_WINDOW_MILLIS);
+        coalescer.add(DAY);
+        coalescer.add(LOCATION_WEATHER);
+        coalescer.add(LOCATION_WEATHER);
+        coalescer.add(OTHER_LOCATION_WEATHER);
+        assertEquals("Error: pending changes were counted", 0, coalescer.getEmittedCount());
+
+        coalescer.flush();
+        assertEquals("Error: wrong number of notifications sent", 2, coalescer.getEmittedCount());
+        assertEquals("Error: wrong number of notifications suppressed",
+                2, coalescer.getSuppressedCount());
+    }
+
+    /*
+        A location insert, a bulk insert and a later change to one of the same days, in quick
+        succession, used to wake observers three times.
+     */
+    public void testProviderCoalescesSync() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        NotificationCoalescer coalescer =
+                ((WeatherProvider) client.getLocalContentProvider()).getNotificationCoalescer();
+        coalescer.flush();
+        long emitted = coalescer.getEmittedCount();
+        long suppressed = coalescer.getSuppressedCount();
+
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] weather = TestProvider.createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weather);
+        weather[0].put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{weather[0]});
+        coalescer.flush();
+        client.release();
+
+        // location, and weather/99705 which covers the day changed afterwards
+        assertEquals("Error: wrong number of notifications sent",
+                2, coalescer.getEmittedCount() - emitted);
+        assertEquals("Error: wrong number of notifications suppressed",
+                1, coalescer.getSuppressedCount() - suppressed);
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
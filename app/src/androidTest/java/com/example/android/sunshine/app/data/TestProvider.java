@@ -16,6 +16,8 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.pm.PackageManager;
@@ -30,6 +32,8 @@ import android.util.Log;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.util.ArrayList;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -422,7 +426,7 @@ public class TestProvider extends AndroidTestCase {
     }
 
 
-    static private final int BULK_INSERT_RECORDS_TO_INSERT = 10;
+    static final int BULK_INSERT_RECORDS_TO_INSERT = 10;
     static ContentValues[] createBulkInsertWeatherValues(long locationRowId) {
         long currentTestDate = TestUtilities.TEST_DATE;
         long millisecondsInADay = 1000*60*60*24;
@@ -512,4 +516,190 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        A second bulkInsert of the same forecast should write nothing, and a forecast that differs
+        on one day should update just that row, in place.
+     */
+    public void testBulkInsertOnlyWritesChanges() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        int insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                bulkInsertContentValues);
+        assertEquals("Error: first bulkInsert didn't insert every row",
+                BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+        long[] ids = queryWeatherIds();
+
+        int writeCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+        assertEquals("Error: unchanged forecast was written again", 0, writeCount);
+
+        ContentValues[] changedValues = createBulkInsertWeatherValues(locationRowId);
+        changedValues[3].put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, weatherObserver);
+
+        writeCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, changedValues);
+
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+        assertEquals("Error: changing one day didn't write exactly one row", 1, writeCount);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            // onChange(boolean, Uri) only gets the URI from Jelly Bean on
+            assertEquals("Error: notification wasn't limited to the changed day",
+                    WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                            changedValues[3].getAsLong(WeatherEntry.COLUMN_DATE)),
+                    weatherObserver.mChangedUri);
+        }
+
+        long[] idsAfter = queryWeatherIds();
+        assertEquals("Error: row count changed", ids.length, idsAfter.length);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals("Error: _ID of day " + i + " changed", ids[i], idsAfter[i]);
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        cursor.moveToPosition(3);
+        TestUtilities.validateCurrentRecord("testBulkInsertOnlyWritesChanges.  Error validating"
+                + " updated WeatherEntry", cursor, changedValues[3]);
+        cursor.close();
+    }
+
+    /*
+        A day given twice in one batch should be inserted once and then updated in place, not
+        replaced by a row with a new _ID.
+     */
+    public void testRepeatedDayInOneBatchKeepsId() throws Exception {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues first = TestUtilities.createWeatherValues(locationRowId);
+        ContentValues second = TestUtilities.createWeatherValues(locationRowId);
+        second.put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+        ContentValues third = TestUtilities.createWeatherValues(locationRowId);
+        third.put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+
+        int writeCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{first, second, third});
+        assertEquals("Error: the repeated day wasn't inserted then updated once", 2, writeCount);
+        long[] ids = queryWeatherIds();
+        assertEquals("Error: the repeated day was stored more than once", 1, ids.length);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        ContentValues fourth = TestUtilities.createWeatherValues(locationRowId);
+        fourth.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + 1000 * 60 * 60 * 24);
+        ContentValues fifth = new ContentValues(fourth);
+        fifth.put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+        operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                .withValues(fourth).build());
+        operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                .withValues(fifth).build());
+        ContentProviderResult[] results = mContext.getContentResolver().applyBatch(
+                WeatherContract.CONTENT_AUTHORITY, operations);
+        assertEquals("Error: the repeated day in a batch got a new _ID",
+                results[0].uri, results[1].uri);
+
+        long[] idsAfter = queryWeatherIds();
+        assertEquals("Error: wrong number of days after the batch", 2, idsAfter.length);
+        assertEquals("Error: _ID of the first day changed", ids[0], idsAfter[0]);
+        assertEquals("Error: the repeated day in a batch was replaced",
+                ContentUris.parseId(results[0].uri), idsAfter[1]);
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry.COLUMN_SHORT_DESC}, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertTrue("Error: no days stored", cursor.moveToFirst());
+        assertEquals("Error: the repeated day wasn't updated", "Meteors", cursor.getString(0));
+        assertTrue("Error: only one day stored", cursor.moveToNext());
+        assertEquals("Error: the repeated day in a batch wasn't updated", "Meteors",
+                cursor.getString(0));
+        cursor.close();
+    }
+
+    private long[] queryWeatherIds() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID},
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        return ids;
+    }
+
+    /*
+        A whole sync's worth of changes in one batch: a new location, its weather referring back
+        to it, and the removal of a day gone by, all applied together with one notification.
+     */
+    public void testApplyBatch() throws Exception {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues oldDay = TestUtilities.createWeatherValues(locationRowId);
+        long millisecondsInADay = 1000*60*60*24;
+        oldDay.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE - millisecondsInADay);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, oldDay);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        ContentValues newLocation = TestUtilities.createNorthPoleLocationValues();
+        newLocation.put(LocationEntry.COLUMN_LOCATION_SETTING, "94043");
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(newLocation).build());
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(-1);
+        for (ContentValues values : weatherValues) {
+            values.remove(WeatherEntry.COLUMN_LOC_KEY);
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(values)
+                    .withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, 0)
+                    .build());
+        }
+        operations.add(ContentProviderOperation.newDelete(WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherEntry.COLUMN_DATE + " < ?",
+                        new String[]{Long.toString(
+                                WeatherContract.normalizeDate(TestUtilities.TEST_DATE))})
+                .build());
+
+        TestUtilities.TestContentObserver observer = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherContract.BASE_CONTENT_URI, true, observer);
+        ContentProviderResult[] results = mContext.getContentResolver().applyBatch(
+                WeatherContract.CONTENT_AUTHORITY, operations);
+        observer.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(observer);
+
+        assertEquals("Error: wrong number of results", operations.size(), results.length);
+        long newLocationRowId = ContentUris.parseId(results[0].uri);
+        assertEquals("Error: old day wasn't deleted", 1, (int) results[results.length - 1].count);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                new String[]{Long.toString(newLocationRowId)},
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals("Error: weather not inserted against the new location",
+                BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+
+        // Applying the same weather again leaves the rows, and their _IDs, as they were.
+        ArrayList<ContentProviderOperation> again = new ArrayList<ContentProviderOperation>();
+        for (ContentValues values : createBulkInsertWeatherValues(newLocationRowId)) {
+            again.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(values).build());
+        }
+        ContentProviderResult[] againResults = mContext.getContentResolver().applyBatch(
+                WeatherContract.CONTENT_AUTHORITY, again);
+        for (int i = 0; i < againResults.length; i++) {
+            assertEquals("Error: unchanged day " + i + " got a new row",
+                    results[i + 1].uri, againResults[i].uri);
+        }
+    }
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentProviderClient;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Build;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/*
+    Checks that WeatherProvider answers repeated forecast queries from its cache, and that
+    whatever it answers still matches the database after a bulkInsert or delete.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+public class TestQueryCache extends AndroidTestCase {
+
+    private static final Uri DAY = WeatherEntry.buildWeatherLocationWithDate(
+            TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+    private static final Uri LOCATION_WEATHER =
+            WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+
+    private ContentProviderClient mClient;
+    private QueryCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mClient = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        mCache = ((WeatherProvider) mClient.getLocalContentProvider()).getQueryCache();
+        // Other tests change the database behind the provider's back.
+        mCache.invalidate();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mClient.release();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testRepeatedQueryIsCached() {
+        if (!QueryCache.isSupported()) return;
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] weather = TestProvider.createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weather);
+
+        int hits = mCache.getHitCount();
+        int misses = mCache.getMissCount();
+        String first = readShortDescs(LOCATION_WEATHER);
+        String second = readShortDescs(LOCATION_WEATHER);
+        assertEquals("Error: the cached result differs from the first one", first, second);
+        assertEquals("Error: wrong number of misses", 1, mCache.getMissCount() - misses);
+        assertEquals("Error: wrong number of hits", 1, mCache.getHitCount() - hits);
+
+        // The cached copy must read back exactly as the database does, type for type.
+        mContext.getContentResolver().query(DAY, null, null, null, null).close();
+        Cursor cached = mContext.getContentResolver().query(DAY, null, null, null, null);
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        Cursor stored = dbHelper.getReadableDatabase().rawQuery(
+                WeatherProvider.buildQuerySql(DAY, null, null, null),
+                new String[]{TestUtilities.TEST_LOCATION,
+                        Long.toString(WeatherContract.normalizeDate(TestUtilities.TEST_DATE))});
+        assertTrue("Error: the day isn't stored", stored.moveToFirst());
+        assertTrue("Error: the cached day is empty", cached.moveToFirst());
+        assertEquals("Error: the cached day has different columns",
+                Arrays.asList(stored.getColumnNames()), Arrays.asList(cached.getColumnNames()));
+        for (int i = 0; i < stored.getColumnCount(); i++) {
+            assertEquals("Error: cached column " + stored.getColumnName(i) + " has a different type",
+                    stored.getType(i), cached.getType(i));
+            String error = "Error: cached column " + stored.getColumnName(i) + " has a different value";
+            if (stored.getType(i) == Cursor.FIELD_TYPE_STRING) {
+                assertEquals(error, stored.getString(i), cached.getString(i));
+            } else {
+                assertEquals(error, stored.getDouble(i), cached.getDouble(i));
+            }
+        }
+        cached.close();
+        stored.close();
+        dbHelper.close();
+    }
+
+    public void testBulkInsertInvalidates() {
+        if (!QueryCache.isSupported()) return;
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] weather = TestProvider.createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weather);
+        assertEquals("Error: wrong day before the change", "Asteroids", readShortDescs(DAY));
+
+        weather[0].put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{weather[0]});
+        assertEquals("Error: a stale day was served after bulkInsert", "Meteors",
+                readShortDescs(DAY));
+        assertTrue("Error: the list still starts with a stale day",
+                readShortDescs(LOCATION_WEATHER).startsWith("Meteors,"));
+
+        // An insert that changes nothing leaves the cache alone.
+        long invalidations = mCache.getInvalidationCount();
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{weather[0]});
+        assertEquals("Error: an unchanged forecast emptied the cache",
+                invalidations, mCache.getInvalidationCount());
+    }
+
+    public void testDeleteInvalidates() {
+        if (!QueryCache.isSupported()) return;
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(locationRowId));
+        assertEquals("Error: wrong day before the delete", "Asteroids", readShortDescs(DAY));
+        assertEquals("Error: wrong number of days before the delete",
+                TestProvider.BULK_INSERT_RECORDS_TO_INSERT, countRows(LOCATION_WEATHER));
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(WeatherContract.normalizeDate(TestUtilities.TEST_DATE))});
+        assertEquals("Error: a deleted day was served", "", readShortDescs(DAY));
+        assertEquals("Error: a deleted day is still in the list",
+                TestProvider.BULK_INSERT_RECORDS_TO_INSERT - 1, countRows(LOCATION_WEATHER));
+    }
+
+    public void testFreshnessUpdateNotifiesNobody() {
+        if (!QueryCache.isSupported()) return;
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(locationRowId));
+        NotificationCoalescer coalescer =
+                ((WeatherProvider) mClient.getLocalContentProvider()).getNotificationCoalescer();
+        coalescer.flush();
+        // Without a projection the location's columns come along, fresh_until among them.
+        assertEquals("Error: wrong freshness before the update", 0, readFreshUntil());
+
+        // What a sync saves after a 304 that repeated the validators
+        long emitted = coalescer.getEmittedCount();
+        long freshUntil = System.currentTimeMillis() + 600000;
+        ContentValues freshness = new ContentValues();
+        freshness.put(LocationEntry.COLUMN_FRESH_UNTIL, freshUntil);
+        assertEquals("Error: freshness not saved", 1, mContext.getContentResolver().update(
+                LocationEntry.CONTENT_URI, freshness, LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationRowId)}));
+        coalescer.flush();
+        assertEquals("Error: saving freshness notified observers",
+                emitted, coalescer.getEmittedCount());
+        assertEquals("Error: a cached result still has the old freshness",
+                freshUntil, readFreshUntil());
+    }
+
+    public void testEviction() {
+        if (!QueryCache.isSupported()) return;
+        QueryCache cache = new QueryCache(2);
+        String[] keys = {"a", "b", "c"};
+        for (String key : keys) {
+            MatrixCursor cursor = new MatrixCursor(new String[]{"key"});
+            cursor.addRow(new Object[]{key});
+            cache.put(key, cache.getGeneration(), cursor).close();
+        }
+        assertNull("Error: the oldest result wasn't evicted", cache.get("a"));
+        assertEquals("Error: wrong number of evictions", 1, cache.getEvictionCount());
+
+        Cursor cursor = cache.get("c");
+        assertTrue("Error: the newest result is missing", cursor.moveToFirst());
+        assertEquals("Error: wrong cached value", "c", cursor.getString(0));
+        cursor.close();
+
+        cache.invalidate();
+        assertNull("Error: a result survived invalidation", cache.get("c"));
+        assertEquals("Error: invalidated results were counted as evictions",
+                1, cache.getEvictionCount());
+
+        // A result read before a write committed mustn't be kept.
+        long generation = cache.getGeneration();
+        cache.invalidate();
+        MatrixCursor stale = new MatrixCursor(new String[]{"key"});
+        stale.addRow(new Object[]{"stale"});
+        cache.put("d", generation, stale).close();
+        assertNull("Error: a result from before a write was cached", cache.get("d"));
+    }
+
+    // The short descriptions of the rows the URI returns, comma separated.
+    private String readShortDescs(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(uri,
+                new String[]{WeatherEntry.COLUMN_SHORT_DESC}, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        StringBuilder descs = new StringBuilder();
+        while (cursor.moveToNext()) {
+            if (descs.length() > 0) descs.append(',');
+            descs.append(cursor.getString(0));
+        }
+        cursor.close();
+        return descs.toString();
+    }
+
+    private long readFreshUntil() {
+        Cursor cursor = mContext.getContentResolver().query(LOCATION_WEATHER, null, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertTrue("Error: no weather for the location", cursor.moveToFirst());
+        long freshUntil = cursor.getLong(cursor.getColumnIndex(LocationEntry.COLUMN_FRESH_UNTIL));
+        cursor.close();
+        return freshUntil;
+    }
+
+    private int countRows(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+}
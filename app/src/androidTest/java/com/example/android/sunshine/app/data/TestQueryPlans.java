@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Runs EXPLAIN QUERY PLAN on each kind of query the app makes through WeatherProvider and fails
+    if any of them scans a whole table (or a whole index) or has to sort its results in a
+    temporary B-tree.  Queries that deliberately read every row, like the sync adapter's list of
+    all locations, aren't included.
+ */
+public class TestQueryPlans extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestQueryPlans.class.getSimpleName();
+
+    // The projections below are copied from the components that use them, so that a column added
+    // there without thinking about the index shows up here.
+
+    // ForecastFragment
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // DetailFragment
+    private static final String[] DETAIL_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_LOCATION_SETTING
+    };
+
+    // TodayWidgetIntentService
+    private static final String[] TODAY_WIDGET_COLUMNS = {
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    // DetailWidgetRemoteViewsService
+    private static final String[] DETAIL_WIDGET_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    // SunshineSyncAdapter.notifyWeather and WearableService
+    private static final String[] NOTIFY_WEATHER_COLUMNS = {
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    private static final String DATE_ASC = WeatherEntry.COLUMN_DATE + " ASC";
+    private static final String LOCATION = TestUtilities.TEST_LOCATION;
+    private static final String DATE = Long.toString(TestUtilities.TEST_DATE);
+
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDb = new WeatherDbHelper(mContext).getReadableDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        super.tearDown();
+    }
+
+    public void testForecastList() {
+        assertIndexed(WeatherEntry.buildWeatherLocationWithStartDate(LOCATION, TestUtilities.TEST_DATE),
+                FORECAST_COLUMNS, null, DATE_ASC, LOCATION, DATE);
+        assertIndexed(WeatherEntry.buildWeatherLocation(LOCATION),
+                FORECAST_COLUMNS, null, DATE_ASC, LOCATION);
+    }
+
+    public void testDetail() {
+        assertIndexed(WeatherEntry.buildWeatherLocationWithDate(LOCATION, TestUtilities.TEST_DATE),
+                DETAIL_COLUMNS, null, null, LOCATION, DATE);
+        assertIndexed(WeatherEntry.buildWeatherLocationWithDate(LOCATION, TestUtilities.TEST_DATE),
+                NOTIFY_WEATHER_COLUMNS, null, null, LOCATION, DATE);
+    }
+
+    public void testWidgets() {
+        Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(LOCATION, TestUtilities.TEST_DATE);
+        assertIndexed(uri, TODAY_WIDGET_COLUMNS, null, DATE_ASC, LOCATION, DATE);
+        assertIndexed(uri, DETAIL_WIDGET_COLUMNS, null, DATE_ASC, LOCATION, DATE);
+    }
+
+    public void testLocationLookup() {
+        // SunshineSyncAdapter.addLocation
+        assertIndexed(LocationEntry.CONTENT_URI, new String[]{LocationEntry._ID},
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", null, LOCATION);
+    }
+
+    public void testWeatherForLocation() {
+        // What WeatherProvider.bulkInsert compares incoming rows against
+        assertIndexed(WeatherEntry.CONTENT_URI, null,
+                WeatherEntry.COLUMN_LOC_KEY + " = ? ", null, "1");
+    }
+
+    private void assertIndexed(Uri uri, String[] projection, String selection, String sortOrder,
+                               String... selectionArgs) {
+        String sql = WeatherProvider.buildQuerySql(uri, projection, selection, sortOrder);
+        Cursor cursor = mDb.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        try {
+            assertTrue("Error: no query plan for " + sql, cursor.moveToFirst());
+            int detailIndex = cursor.getColumnIndex("detail");
+            do {
+                String detail = cursor.getString(detailIndex);
+                Log.d(LOG_TAG, uri + ": " + detail);
+                assertFalse("Error: full scan in " + sql + ": " + detail,
+                        detail.startsWith("SCAN"));
+                assertFalse("Error: sort in " + sql + ": " + detail,
+                        detail.contains("TEMP B-TREE"));
+            } while (cursor.moveToNext());
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/*
+    Runs the forecast list query on several threads while another thread writes a large forecast
+    in one transaction, once with the rollback journal and once with write-ahead logging, and
+    logs the readers' median and 99th percentile latency for each.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public class TestReadContention extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestReadContention.class.getSimpleName();
+
+    private static final int READER_THREADS = 3;
+    private static final int ROWS_TO_WRITE = 5000;
+
+    private WeatherDbHelper mDbHelper;
+    private SQLiteDatabase mDb;
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDbHelper = new WeatherDbHelper(mContext);
+        mDb = mDbHelper.getWritableDatabase();
+        mLocationRowId = mDb.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        insertWeather(0, 14);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testReadLatencyDuringWrite() throws Exception {
+        // Switching journal modes needs the API 16 connection pool.
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) return;
+
+        mDb.disableWriteAheadLogging();
+        long[] rollback = measureReadsDuringWrite(14);
+        mDb.enableWriteAheadLogging();
+        long[] wal = measureReadsDuringWrite(14 + ROWS_TO_WRITE);
+
+        Log.i(LOG_TAG, READER_THREADS + " readers during a " + ROWS_TO_WRITE + " row write:"
+                + " rollback journal p50 " + rollback[0] / 1000 + "us p99 " + rollback[1] / 1000 + "us,"
+                + " WAL p50 " + wal[0] / 1000 + "us p99 " + wal[1] / 1000 + "us");
+
+        assertTrue("Error: WAL readers were slower than rollback journal readers",
+                wal[1] <= rollback[1]);
+    }
+
+    /*
+        Returns the median and 99th percentile read latency, in nanoseconds.
+     */
+    private long[] measureReadsDuringWrite(final int firstDay) throws InterruptedException {
+        final List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch writing = new CountDownLatch(1);
+        final boolean[] done = new boolean[1];
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                mDb.beginTransactionNonExclusive();
+                try {
+                    writing.countDown();
+                    for (int i = 0; i < ROWS_TO_WRITE; i++) {
+                        ContentValues values = TestUtilities.createWeatherValues(mLocationRowId);
+                        values.put(WeatherEntry.COLUMN_DATE, day(firstDay + i));
+                        mDb.insert(WeatherEntry.TABLE_NAME, null, values);
+                    }
+                    mDb.setTransactionSuccessful();
+                } finally {
+                    mDb.endTransaction();
+                    synchronized (done) {
+                        done[0] = true;
+                    }
+                }
+            }
+        });
+
+        List<Thread> readers = new ArrayList<Thread>();
+        for (int i = 0; i < READER_THREADS; i++) {
+            readers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        writing.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    while (true) {
+                        synchronized (done) {
+                            if (done[0]) return;
+                        }
+                        long start = System.nanoTime();
+                        Cursor cursor = mDb.rawQuery(WeatherProvider.buildQuerySql(
+                                WeatherEntry.buildWeatherLocationWithStartDate(
+                                        TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE),
+                                null, null, WeatherEntry.COLUMN_DATE + " ASC LIMIT 14"),
+                                new String[]{TestUtilities.TEST_LOCATION,
+                                        Long.toString(TestUtilities.TEST_DATE)});
+                        cursor.getCount();
+                        cursor.close();
+                        latencies.add(System.nanoTime() - start);
+                    }
+                }
+            }));
+        }
+
+        writer.start();
+        for (Thread reader : readers) reader.start();
+        writer.join();
+        for (Thread reader : readers) reader.join();
+
+        assertFalse("Error: no reads completed", latencies.isEmpty());
+        List<Long> sorted = new ArrayList<Long>(latencies);
+        Collections.sort(sorted);
+        return new long[]{
+                sorted.get(sorted.size() / 2),
+                sorted.get(Math.min(sorted.size() - 1, sorted.size() * 99 / 100))
+        };
+    }
+
+    private void insertWeather(int firstDay, int days) {
+        for (int i = 0; i < days; i++) {
+            ContentValues values = TestUtilities.createWeatherValues(mLocationRowId);
+            values.put(WeatherEntry.COLUMN_DATE, day(firstDay + i));
+            mDb.insert(WeatherEntry.TABLE_NAME, null, values);
+        }
+    }
+
+    private static long day(int i) {
+        return TestUtilities.TEST_DATE + i * 1000L * 60 * 60 * 24;
+    }
+}
@@ -122,6 +122,7 @@ public class TestUtilities extends AndroidTestCase {
     static class TestContentObserver extends ContentObserver {
         final HandlerThread mHT;
         boolean mContentChanged;
+        Uri mChangedUri;
 
         static TestContentObserver getTestContentObserver() {
             HandlerThread ht = new HandlerThread("ContentObserverThread");
@@ -142,6 +143,7 @@ public class TestUtilities extends AndroidTestCase {
 
         @Override
         public void onChange(boolean selfChange, Uri uri) {
+            mChangedUri = uri;
             mContentChanged = true;
         }
 
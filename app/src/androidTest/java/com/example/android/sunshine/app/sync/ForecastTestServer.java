@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/*
+    A tiny HTTP/1.1 server on the loopback interface that stands in for OpenWeatherMap in the sync
+    tests.  Every request gets the same canned forecast after a configurable delay, which plays
+    the part of the network round trip.  Responses carry an ETag, and a request that presents it
+    in If-None-Match gets a 304 instead of the body.  Connections are kept alive, and bodies are
+    gzipped for clients that ask, so both can be checked from the client side.
+ */
+class ForecastTestServer {
+    static final String LOG_TAG = ForecastTestServer.class.getSimpleName();
+
+    private final ServerSocket mServerSocket;
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicInteger mConnectionCount = new AtomicInteger();
+    private final AtomicInteger mGzipCount = new AtomicInteger();
+    private final AtomicInteger mNotModifiedCount = new AtomicInteger();
+    private volatile long mLatencyMillis;
+    private volatile byte[] mBody;
+    private volatile String mEtag = "\"v1\"";
+    private volatile String mCacheControl;
+    private volatile boolean mGzipEnabled = true;
+
+    ForecastTestServer(String body, long latencyMillis) throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mBody = body.getBytes("UTF-8");
+        mLatencyMillis = latencyMillis;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop();
+            }
+        }, LOG_TAG).start();
+    }
+
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/data/2.5/forecast/daily?";
+    }
+
+    int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    int getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    int getGzipCount() {
+        return mGzipCount.get();
+    }
+
+    int getNotModifiedCount() {
+        return mNotModifiedCount.get();
+    }
+
+    String getEtag() {
+        return mEtag;
+    }
+
+    /*
+        Replaces the forecast being served, which also changes its ETag.
+     */
+    void setBody(String body, String etag) throws IOException {
+        mBody = body.getBytes("UTF-8");
+        mEtag = etag;
+    }
+
+    /*
+        Sets the Cache-Control header sent with every response, or null for none.
+     */
+    void setCacheControl(String cacheControl) {
+        mCacheControl = cacheControl;
+    }
+
+    void setGzipEnabled(boolean gzipEnabled) {
+        mGzipEnabled = gzipEnabled;
+    }
+
+    void shutdown() {
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error closing server socket", e);
+        }
+    }
+
+    private void acceptLoop() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                }).start();
+            } catch (IOException e) {
+                // the socket was closed by shutdown()
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        mConnectionCount.incrementAndGet();
+        try {
+            // Idle keep-alive connections are dropped eventually, as a real server would.
+            socket.setSoTimeout(5000);
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+            OutputStream out = socket.getOutputStream();
+            String requestLine;
+            while ((requestLine = in.readLine()) != null) {
+                if (requestLine.length() == 0) continue;
+
+                // Headers; we answer every GET the same way.
+                String ifNoneMatch = null;
+                boolean acceptsGzip = false;
+                boolean close = false;
+                String line;
+                while ((line = in.readLine()) != null && line.length() > 0) {
+                    int colon = line.indexOf(':');
+                    if (colon <= 0) continue;
+                    String name = line.substring(0, colon).trim();
+                    String value = line.substring(colon + 1).trim();
+                    if (name.equalsIgnoreCase("If-None-Match")) {
+                        ifNoneMatch = value;
+                    } else if (name.equalsIgnoreCase("Accept-Encoding")) {
+                        acceptsGzip = value.contains("gzip");
+                    } else if (name.equalsIgnoreCase("Connection")) {
+                        close = value.equalsIgnoreCase("close");
+                    }
+                }
+                mRequestCount.incrementAndGet();
+                Thread.sleep(mLatencyMillis);
+
+                byte[] body = mBody;
+                String etag = mEtag;
+                String cacheControl = mCacheControl;
+                StringBuilder headers = new StringBuilder();
+                if (etag.equals(ifNoneMatch)) {
+                    mNotModifiedCount.incrementAndGet();
+                    body = new byte[0];
+                    headers.append("HTTP/1.1 304 Not Modified\r\n");
+                } else {
+                    headers.append("HTTP/1.1 200 OK\r\n")
+                            .append("Content-Type: application/json; charset=utf-8\r\n");
+                    if (acceptsGzip && mGzipEnabled) {
+                        mGzipCount.incrementAndGet();
+                        body = gzip(body);
+                        headers.append("Content-Encoding: gzip\r\n");
+                    }
+                    headers.append("Content-Length: ").append(body.length).append("\r\n");
+                }
+                headers.append("ETag: ").append(etag).append("\r\n");
+                if (cacheControl != null) {
+                    headers.append("Cache-Control: ").append(cacheControl).append("\r\n");
+                }
+                if (close) {
+                    headers.append("Connection: close\r\n");
+                }
+                headers.append("\r\n");
+
+                out.write(headers.toString().getBytes("ISO-8859-1"));
+                out.write(body);
+                out.flush();
+                if (close) break;
+            }
+        } catch (IOException | InterruptedException e) {
+            // the client went away, or the connection sat idle for too long
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error closing socket", e);
+            }
+        }
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(body);
+        gzip.close();
+        return bytes.toByteArray();
+    }
+}
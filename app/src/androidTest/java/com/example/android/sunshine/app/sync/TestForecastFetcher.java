@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Fetches forecasts for several locations from a local stand-in for OpenWeatherMap, once one at a
+    time and once through the bounded pool, and compares the wall-clock time of the two.
+ */
+public class TestForecastFetcher extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastFetcher.class.getSimpleName();
+
+    static final int NUM_LOCATIONS = 12;
+    static final long SERVER_LATENCY_MILLIS = 150;
+
+    private ForecastTestServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new ForecastTestServer(TestForecastJsonParser.buildForecastJson(14),
+                SERVER_LATENCY_MILLIS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    static List<ForecastFetcher.Request> buildLocations(int count) {
+        List<ForecastFetcher.Request> locations = new ArrayList<ForecastFetcher.Request>(count);
+        for (int i = 0; i < count; i++) {
+            locations.add(new ForecastFetcher.Request(Integer.toString(94043 + i)));
+        }
+        return locations;
+    }
+
+    public void testFetchAll() {
+        List<ForecastFetcher.Request> locations = buildLocations(NUM_LOCATIONS);
+        ForecastFetcher fetcher = new ForecastFetcher(mServer.getBaseUrl(), "test",
+                ForecastFetcher.MAX_PARALLEL_FETCHES,
+                TestForecastJsonParser.TEST_JULIAN_START_DAY);
+
+        List<ForecastFetcher.Result> results = fetcher.fetchAll(locations);
+
+        assertEquals("Error: not every location was fetched", NUM_LOCATIONS, results.size());
+        for (int i = 0; i < NUM_LOCATIONS; i++) {
+            ForecastFetcher.Result result = results.get(i);
+            assertEquals("Error: results are out of order",
+                    locations.get(i).locationSetting, result.locationSetting);
+            assertEquals("Error: fetch of " + result.locationSetting + " failed",
+                    SunshineSyncAdapter.LOCATION_STATUS_OK, result.status);
+            assertEquals("Error: wrong number of days for " + result.locationSetting,
+                    14, result.forecast.days.size());
+        }
+        assertEquals("Error: unexpected number of requests", NUM_LOCATIONS, mServer.getRequestCount());
+    }
+
+    public void testSequentialVersusBatched() {
+        List<ForecastFetcher.Request> locations = buildLocations(NUM_LOCATIONS);
+
+        ForecastFetcher sequential = new ForecastFetcher(mServer.getBaseUrl(), "test", 1,
+                TestForecastJsonParser.TEST_JULIAN_START_DAY);
+        long start = System.nanoTime();
+        sequential.fetchAll(locations);
+        long sequentialMillis = (System.nanoTime() - start) / 1000000;
+
+        ForecastFetcher batched = new ForecastFetcher(mServer.getBaseUrl(), "test",
+                ForecastFetcher.MAX_PARALLEL_FETCHES,
+                TestForecastJsonParser.TEST_JULIAN_START_DAY);
+        start = System.nanoTime();
+        batched.fetchAll(locations);
+        long batchedMillis = (System.nanoTime() - start) / 1000000;
+
+        Log.i(LOG_TAG, NUM_LOCATIONS + " locations at " + SERVER_LATENCY_MILLIS + "ms each:"
+                + " sequential " + sequentialMillis + "ms, batched " + batchedMillis + "ms");
+
+        // Sequential can't beat the sum of the round trips; batched should be well under it.
+        assertTrue("Error: sequential fetch was faster than its round trips",
+                sequentialMillis >= NUM_LOCATIONS * SERVER_LATENCY_MILLIS);
+        assertTrue("Error: batched fetch was not faster than sequential",
+                batchedMillis < sequentialMillis);
+    }
+
+    public void testConditionalFetch() throws Exception {
+        ForecastFetcher fetcher = new ForecastFetcher(mServer.getBaseUrl(), "test", 1,
+                TestForecastJsonParser.TEST_JULIAN_START_DAY);
+
+        // The first fetch has no validators, so it gets the full forecast and an ETag.
+        ForecastFetcher.Request request = new ForecastFetcher.Request("94043");
+        ForecastFetcher.Result result = fetcher.fetch(request);
+        assertFalse("Error: unconditional fetch reported not modified", result.notModified);
+        assertNotNull("Error: no forecast from unconditional fetch", result.forecast);
+        assertEquals("Error: ETag not captured", mServer.getEtag(), result.etag);
+        assertTrue("Error: new validators not flagged for saving", result.validatorsChanged);
+
+        // Presenting the ETag gets a 304 and no forecast to parse or store.
+        request.etag = result.etag;
+        result = fetcher.fetch(request);
+        assertEquals("Error: 304 not reported as OK",
+                SunshineSyncAdapter.LOCATION_STATUS_OK, result.status);
+        assertTrue("Error: 304 not reported as not modified", result.notModified);
+        assertNull("Error: 304 produced a forecast", result.forecast);
+        assertEquals("Error: server did not see a conditional request", 1,
+                mServer.getNotModifiedCount());
+        assertFalse("Error: a 304 that repeated the ETag flagged it for saving",
+                result.validatorsChanged);
+
+        // Once the forecast changes the same request gets the new body.
+        mServer.setBody(TestForecastJsonParser.buildForecastJson(7), "\"v2\"");
+        result = fetcher.fetch(request);
+        assertFalse("Error: changed forecast reported not modified", result.notModified);
+        assertEquals("Error: wrong number of days in changed forecast",
+                7, result.forecast.days.size());
+        assertEquals("Error: new ETag not captured", "\"v2\"", result.etag);
+    }
+
+    public void testFreshResponseSkipsRequest() throws Exception {
+        ForecastFetcher fetcher = new ForecastFetcher(mServer.getBaseUrl(), "test", 1,
+                TestForecastJsonParser.TEST_JULIAN_START_DAY);
+        mServer.setCacheControl("public, max-age=600");
+
+        ForecastFetcher.Request request = new ForecastFetcher.Request("94043");
+        ForecastFetcher.Result result = fetcher.fetch(request);
+        assertTrue("Error: max-age not honored", result.freshUntil > System.currentTimeMillis());
+
+        request.etag = result.etag;
+        request.freshUntil = result.freshUntil;
+        result = fetcher.fetch(request);
+        assertTrue("Error: fresh response not reported as not modified", result.notModified);
+        assertEquals("Error: a request was made for a fresh response", 1, mServer.getRequestCount());
+        assertFalse("Error: nothing was fetched but something was flagged for saving",
+                result.validatorsChanged || result.freshnessChanged);
+
+        // Once stale, a 304 only extends the freshness, which is saved without announcing it.
+        request.freshUntil = 0;
+        result = fetcher.fetch(request);
+        assertTrue("Error: stale response not revalidated", result.notModified);
+        assertFalse("Error: a 304 that repeated the ETag flagged it for saving",
+                result.validatorsChanged);
+        assertTrue("Error: new freshness not flagged for saving", result.freshnessChanged);
+    }
+
+    public void testParseMaxAge() {
+        assertEquals(-1, ForecastFetcher.parseMaxAgeSeconds(null));
+        assertEquals(-1, ForecastFetcher.parseMaxAgeSeconds("public"));
+        assertEquals(600, ForecastFetcher.parseMaxAgeSeconds("public, max-age=600"));
+        assertEquals(0, ForecastFetcher.parseMaxAgeSeconds("no-cache, max-age=600"));
+        assertEquals(-1, ForecastFetcher.parseMaxAgeSeconds("max-age=soon"));
+    }
+
+    public void testGzipAndConnectionReuse() {
+        List<ForecastFetcher.Request> locations = buildLocations(NUM_LOCATIONS);
+        ForecastHttpClient client = new ForecastHttpClient();
+        ForecastFetcher fetcher = new ForecastFetcher(client, mServer.getBaseUrl(), "test", 1,
+                TestForecastJsonParser.TEST_JULIAN_START_DAY);
+
+        List<ForecastFetcher.Result> results = fetcher.fetchAll(locations);
+        for (ForecastFetcher.Result result : results) {
+            assertEquals("Error: wrong number of days for " + result.locationSetting,
+                    14, result.forecast.days.size());
+        }
+
+        Log.i(LOG_TAG, NUM_LOCATIONS + " locations: " + client.getBytesOnWire() + " bytes on the wire, "
+                + client.getBytesDecoded() + " decoded, " + mServer.getConnectionCount()
+                + " connections");
+
+        assertEquals("Error: not every response was gzipped",
+                NUM_LOCATIONS, mServer.getGzipCount());
+        assertTrue("Error: gzip didn't shrink the responses",
+                client.getBytesOnWire() < client.getBytesDecoded());
+        assertTrue("Error: connections were not reused",
+                mServer.getConnectionCount() < NUM_LOCATIONS);
+    }
+
+    public void testUncompressedResponse() {
+        mServer.setGzipEnabled(false);
+        ForecastHttpClient client = new ForecastHttpClient();
+        ForecastFetcher fetcher = new ForecastFetcher(client, mServer.getBaseUrl(), "test", 1,
+                TestForecastJsonParser.TEST_JULIAN_START_DAY);
+
+        ForecastFetcher.Result result = fetcher.fetch(new ForecastFetcher.Request("94043"));
+        assertEquals("Error: wrong number of days", 14, result.forecast.days.size());
+        assertEquals("Error: identity response was counted as compressed",
+                client.getBytesOnWire(), client.getBytesDecoded());
+    }
+}
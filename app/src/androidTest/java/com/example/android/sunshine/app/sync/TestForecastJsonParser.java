@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+
+/*
+    Checks that the streaming forecast parser produces exactly the rows the org.json parser does,
+    and benchmarks the two against each other on forecasts recorded from OpenWeatherMap.
+ */
+public class TestForecastJsonParser extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastJsonParser.class.getSimpleName();
+
+    static final int TEST_JULIAN_START_DAY = 2457007; // December 20th, 2014
+
+    // Recorded from api.openweathermap.org/data/2.5/forecast/daily?q=94043&mode=json&units=metric
+    static final String RECORDED_CITY =
+            "\"city\":{\"id\":5375480,\"name\":\"Mountain View\",\"coord\":{\"lon\":-122.083847," +
+            "\"lat\":37.386051},\"country\":\"US\",\"population\":0}";
+    static final String[] RECORDED_DAYS = {
+            "{\"dt\":1419105600,\"temp\":{\"day\":15.36,\"min\":9.62,\"max\":15.36,\"night\":9.62," +
+                    "\"eve\":13.17,\"morn\":15.36},\"pressure\":1004.8,\"humidity\":95," +
+                    "\"weather\":[{\"id\":501,\"main\":\"Rain\",\"description\":\"moderate rain\"," +
+                    "\"icon\":\"10d\"}],\"speed\":3.27,\"deg\":152,\"clouds\":92,\"rain\":9.01}",
+            "{\"dt\":1419192000,\"temp\":{\"day\":13.11,\"min\":7.24,\"max\":13.82,\"night\":7.24," +
+                    "\"eve\":11.93,\"morn\":9.16},\"pressure\":1011.33,\"humidity\":86," +
+                    "\"weather\":[{\"id\":500,\"main\":\"Rain\",\"description\":\"light rain\"," +
+                    "\"icon\":\"10d\"}],\"speed\":1.62,\"deg\":305,\"clouds\":20,\"rain\":0.5}",
+            "{\"dt\":1419278400,\"temp\":{\"day\":14.01,\"min\":5.43,\"max\":14.01,\"night\":5.43," +
+                    "\"eve\":10.62,\"morn\":7.28},\"pressure\":1017.9,\"humidity\":77," +
+                    "\"weather\":[{\"id\":800,\"main\":\"Clear\",\"description\":\"sky is clear\"," +
+                    "\"icon\":\"01d\"}],\"speed\":1.12,\"deg\":20,\"clouds\":0}",
+            "{\"dt\":1419364800,\"temp\":{\"day\":12.39,\"min\":6.1,\"max\":12.99,\"night\":8.3," +
+                    "\"eve\":11.2,\"morn\":6.1},\"pressure\":1015.28,\"humidity\":0," +
+                    "\"weather\":[{\"id\":803,\"main\":\"Clouds\",\"description\":\"broken clouds\"," +
+                    "\"icon\":\"04d\"}],\"speed\":2.04,\"deg\":171,\"clouds\":69}"
+    };
+    static final String RECORDED_NOT_FOUND = "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}";
+
+    private static final int BENCHMARK_ITERATIONS = 50;
+
+    /*
+        Builds a response in OWM's format with the given number of days, cycling through the
+        recorded days.
+     */
+    static String buildForecastJson(int numDays) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"cod\":\"200\",\"message\":0.0113,").append(RECORDED_CITY)
+                .append(",\"cnt\":").append(numDays).append(",\"list\":[");
+        for (int i = 0; i < numDays; i++) {
+            if (i > 0) json.append(',');
+            json.append(RECORDED_DAYS[i % RECORDED_DAYS.length]);
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    static InputStream toStream(String json) throws UnsupportedEncodingException {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+
+    public void testStreamingMatchesTree() throws Throwable {
+        if (!ForecastJsonParser.isStreamingSupported()) return;
+
+        String json = buildForecastJson(14);
+        ForecastJsonParser.Forecast tree =
+                new ForecastJsonParser(TEST_JULIAN_START_DAY).parse(json);
+        ForecastJsonParser.Forecast stream =
+                new ForecastJsonParser(TEST_JULIAN_START_DAY).parse(toStream(json));
+
+        assertEquals("Error: response code differs", tree.code, stream.code);
+        assertEquals("Error: city name differs", tree.cityName, stream.cityName);
+        assertEquals("Error: latitude differs", tree.cityLatitude, stream.cityLatitude, 0);
+        assertEquals("Error: longitude differs", tree.cityLongitude, stream.cityLongitude, 0);
+        assertEquals("Error: number of days differs", tree.days.size(), stream.days.size());
+        for (int i = 0; i < tree.days.size(); i++) {
+            assertEquals("Error: day " + i + " differs", tree.days.get(i), stream.days.get(i));
+        }
+    }
+
+    public void testStreamingErrorCode() throws Throwable {
+        if (!ForecastJsonParser.isStreamingSupported()) return;
+
+        ForecastJsonParser.Forecast forecast = new ForecastJsonParser(TEST_JULIAN_START_DAY)
+                .parse(toStream(RECORDED_NOT_FOUND));
+        assertEquals("Error: 404 response not reported", 404, forecast.code);
+        assertTrue("Error: 404 response produced weather rows", forecast.days.isEmpty());
+    }
+
+    public void testStreamingMalformed() throws Throwable {
+        if (!ForecastJsonParser.isStreamingSupported()) return;
+
+        String truncated = buildForecastJson(3);
+        truncated = truncated.substring(0, truncated.length() / 2) + "]}";
+        // A 200 without any days, which the tree parser rejects too
+        String noList = "{\"cod\":\"200\",\"message\":0.0113," + RECORDED_CITY + ",\"cnt\":0}";
+        for (String json : new String[]{truncated, noList}) {
+            try {
+                new ForecastJsonParser(TEST_JULIAN_START_DAY).parse(toStream(json));
+                fail("Error: malformed response was accepted: " + json);
+            } catch (JSONException expected) {
+                // the sync adapter reports this as LOCATION_STATUS_SERVER_INVALID
+            }
+        }
+    }
+
+    /*
+        Not a pass/fail test: logs parse time and bytes allocated for both parsers so they can be
+        compared on the device at hand.
+     */
+    public void testParserBenchmark() throws Throwable {
+        if (!ForecastJsonParser.isStreamingSupported()) return;
+
+        for (int numDays : new int[]{7, 14, 16 * 5}) {
+            String json = buildForecastJson(numDays);
+            byte[] body = json.getBytes("UTF-8");
+
+            // warm up both paths so we don't measure class loading
+            readAsString(body);
+            new ForecastJsonParser(TEST_JULIAN_START_DAY).parse(json);
+            new ForecastJsonParser(TEST_JULIAN_START_DAY).parse(new ByteArrayInputStream(body));
+
+            Debug.startAllocCounting();
+            Debug.resetThreadAllocSize();
+            long start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+                // the old path has to buffer the body before it can parse it
+                new ForecastJsonParser(TEST_JULIAN_START_DAY).parse(readAsString(body));
+            }
+            long treeNanos = System.nanoTime() - start;
+            long treeBytes = Debug.getThreadAllocSize();
+
+            Debug.resetThreadAllocSize();
+            start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+                new ForecastJsonParser(TEST_JULIAN_START_DAY).parse(new ByteArrayInputStream(body));
+            }
+            long streamNanos = System.nanoTime() - start;
+            long streamBytes = Debug.getThreadAllocSize();
+            Debug.stopAllocCounting();
+
+            Log.i(LOG_TAG, numDays + " days, " + body.length + " bytes:"
+                    + " tree " + treeNanos / BENCHMARK_ITERATIONS / 1000 + "us "
+                    + treeBytes / BENCHMARK_ITERATIONS + "B allocated,"
+                    + " stream " + streamNanos / BENCHMARK_ITERATIONS / 1000 + "us "
+                    + streamBytes / BENCHMARK_ITERATIONS + "B allocated");
+        }
+    }
+
+    private static String readAsString(byte[] body) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(body)));
+        StringBuilder buffer = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            buffer.append(line).append('\n');
+        }
+        reader.close();
+        return buffer.toString();
+    }
+}
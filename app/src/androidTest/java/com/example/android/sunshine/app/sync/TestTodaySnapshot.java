@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.os.Parcel;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/*
+    Checks that the snapshot a sync builds from the forecast it parsed is the same one the
+    widgets and Muzei would read back from the provider, and that it survives an Intent.
+ */
+public class TestTodaySnapshot extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    public void testSnapshotMatchesProvider() throws Exception {
+        String locationSetting = Utility.getPreferredLocation(mContext);
+        ForecastJsonParser.Forecast forecast =
+                new ForecastJsonParser(ForecastJsonParser.getJulianStartDay())
+                        .parse(TestForecastJsonParser.buildForecastJson(3));
+        long locationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                SunshineSyncAdapter.buildLocationValues(locationSetting, forecast.cityName,
+                        forecast.cityLatitude, forecast.cityLongitude)));
+        for (ContentValues day : forecast.days) {
+            day.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                forecast.days.toArray(new ContentValues[forecast.days.size()]));
+
+        TodaySnapshot parsed = TodaySnapshot.fromForecastDay(mContext, locationSetting,
+                forecast.days.get(0));
+        TodaySnapshot stored = TodaySnapshot.query(mContext);
+        assertNotNull("Error: no snapshot read back for today", stored);
+        assertSameWeather("Error: the parsed snapshot differs from the stored one", parsed, stored);
+
+        Parcel parcel = Parcel.obtain();
+        parsed.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        TodaySnapshot unparcelled = TodaySnapshot.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+        assertSameWeather("Error: the snapshot changed in a Parcel", parsed, unparcelled);
+    }
+
+    public void testNoSnapshotWithoutForecast() {
+        assertNull("Error: a snapshot was made up for an empty database",
+                TodaySnapshot.query(mContext));
+    }
+
+    private static void assertSameWeather(String error, TodaySnapshot expected, TodaySnapshot actual) {
+        assertEquals(error, expected.locationSetting, actual.locationSetting);
+        assertEquals(error, expected.date, actual.date);
+        assertEquals(error, expected.weatherId, actual.weatherId);
+        assertEquals(error, expected.high, actual.high);
+        assertEquals(error, expected.low, actual.low);
+        assertEquals(error, expected.description, actual.description);
+        assertEquals(error, expected.formattedHigh, actual.formattedHigh);
+        assertEquals(error, expected.formattedLow, actual.formattedLow);
+        assertEquals(error, expected.iconResourceId, actual.iconResourceId);
+        assertEquals(error, expected.artResourceId, actual.artResourceId);
+        assertEquals(error, expected.artUrl, actual.artUrl);
+        assertEquals(error, expected.imageUrl, actual.imageUrl);
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Checks that puts waiting behind a slow one are coalesced to the latest for each path, and
+    that failures are counted and reported, with a stand-in for Play Services.
+ */
+public class TestWearLink extends AndroidTestCase {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    public void testQueuedPutsCoalesced() throws Exception {
+        BlockingTransport transport = new BlockingTransport(true);
+        WearLink link = new WearLink(transport);
+        RecordingCallback callback = new RecordingCallback(3);
+
+        link.put(request("/weather", 1), callback.forPut(1));
+        assertTrue("Error: the first put was never sent",
+                transport.started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        // These wait behind the first; only the last of the two for /weather should go.
+        link.put(request("/weather", 2), callback.forPut(2));
+        link.put(request("/other", 3), callback.forPut(3));
+        link.put(request("/weather", 4), callback.forPut(4));
+        transport.release.countDown();
+
+        assertTrue("Error: the puts never finished",
+                callback.done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("Error: wrong puts sent", "[1, 4, 3]", transport.sent.toString());
+        assertEquals("Error: wrong callbacks", "[1, 4, 3]", callback.succeeded.toString());
+        assertEquals("Error: wrong number of puts counted", 3, link.getPutCount());
+        assertEquals("Error: wrong number of puts coalesced", 1, link.getCoalescedCount());
+        assertEquals("Error: a failure was counted", 0, link.getFailureCount());
+        assertTrue("Error: the slowest put was quicker than the mean",
+                link.getMaxLatencyMillis() >= link.getMeanLatencyMillis());
+    }
+
+    public void testFailedPutReported() throws Exception {
+        BlockingTransport transport = new BlockingTransport(false);
+        transport.release.countDown();
+        WearLink link = new WearLink(transport);
+        RecordingCallback callback = new RecordingCallback(1);
+
+        link.put(request("/weather", 1), callback.forPut(1));
+        assertTrue("Error: the put never finished",
+                callback.done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("Error: a put that couldn't connect succeeded",
+                "[1]", callback.failed.toString());
+        assertTrue("Error: a put that couldn't connect was sent", transport.sent.isEmpty());
+        assertEquals("Error: the failure wasn't counted", 1, link.getFailureCount());
+        assertEquals("Error: a failed put was counted as put", 0, link.getPutCount());
+    }
+
+    private static PutDataRequest request(String path, int id) {
+        PutDataMapRequest request = PutDataMapRequest.create(path);
+        request.getDataMap().putInt("id", id);
+        return request.asPutDataRequest();
+    }
+
+    private static int idOf(PutDataRequest request) {
+        return DataMap.fromByteArray(request.getData()).getInt("id");
+    }
+
+    /*
+        Connects if told to, and holds up the first put until released.
+     */
+    private static class BlockingTransport implements WearLink.Transport {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> sent = Collections.synchronizedList(new ArrayList<Integer>());
+        private final boolean mConnects;
+
+        BlockingTransport(boolean connects) {
+            mConnects = connects;
+        }
+
+        @Override
+        public boolean connect() {
+            return mConnects;
+        }
+
+        @Override
+        public boolean putDataItem(PutDataRequest request) {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                return false;
+            }
+            sent.add(idOf(request));
+            return true;
+        }
+    }
+
+    private static class RecordingCallback {
+        final CountDownLatch done;
+        final List<Integer> succeeded = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> failed = Collections.synchronizedList(new ArrayList<Integer>());
+
+        RecordingCallback(int expected) {
+            done = new CountDownLatch(expected);
+        }
+
+        WearLink.Callback forPut(final int id) {
+            return new WearLink.Callback() {
+                @Override
+                public void onPut(boolean success) {
+                    (success ? succeeded : failed).add(id);
+                    done.countDown();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.wear.WatchWeather;
+import com.example.android.sunshine.app.wear.WeatherPayload;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.PutDataRequest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Plays out a day of syncs, the watch waking and a change of units twice: once with the watch
+    polling the phone as it used to, and once with the phone pushing changes and the watch only
+    asking when it has nothing to show.  The phone's side is the real WearableService and
+    WearLink, with a stand-in for Play Services that counts the puts and hands them to the watch.
+    The pushing watch's side is the real WatchWeather, deciding from what those puts delivered;
+    the polling watch's requests are counted as its old code made them.
+ */
+public class TestWearPushSimulation extends AndroidTestCase {
+    public static final String LOG_TAG = TestWearPushSimulation.class.getSimpleName();
+
+    private static final int MINUTES_IN_DAY = 24 * 60;
+    private static final int SYNC_INTERVAL_MINUTES = SunshineSyncAdapter.SYNC_INTERVAL / 60;
+    // How often the watch used to ask for the weather
+    private static final int POLL_INTERVAL_MINUTES = 30;
+    // How often the watch wakes.  The polling watch asked going in and out of ambient each time,
+    // and the pushing watch face catches up with its data layer as it becomes visible.
+    private static final int WRIST_RAISE_INTERVAL_MINUTES = 10;
+    // The syncs, counting from 0, after which the forecast for today has changed
+    private static final int[] CHANGED_SYNCS = {3, 6};
+    private static final int UNITS_CHANGE_MINUTE = 12 * 60 + 5;
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private String mUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mUnits = getPreferences().getString(mContext.getString(R.string.pref_units_key),
+                mContext.getString(R.string.pref_units_metric));
+        startDay();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        restoreUnits();
+        deleteAll();
+        super.tearDown();
+    }
+
+    public void testPushingSendsLess() throws Exception {
+        Day polling = simulate(false, 0);
+        // The same day again, from the same start.
+        restoreUnits();
+        startDay();
+        Day pushing = simulate(true, 0);
+
+        Log.i(LOG_TAG, "Over a day, polling took " + polling.messages + " messages and "
+                + polling.puts + " puts, pushing took " + pushing.messages + " messages and "
+                + pushing.puts + " puts");
+        assertEquals("Error: the watch should only ask when it starts with nothing",
+                1, pushing.messages);
+        assertEquals("Error: the watch got no weather when it started",
+                0, pushing.firstWeatherMinute);
+        assertWatchUpToDate(pushing);
+        // Starting up, the two changed forecasts and the change of units
+        assertEquals("Error: the phone should only push what changed",
+                1 + CHANGED_SYNCS.length + 1, pushing.puts);
+        assertEquals("Error: polling should ask every half hour and every wrist raise",
+                MINUTES_IN_DAY / POLL_INTERVAL_MINUTES
+                        + 2 * (MINUTES_IN_DAY / WRIST_RAISE_INTERVAL_MINUTES),
+                polling.messages);
+        assertTrue("Error: pushing didn't save any puts", pushing.puts * 10 < polling.puts);
+    }
+
+    /*
+        A watch that starts with an empty data layer while no phone is in reach, paired with a
+        phone that already sent this forecast to a watch before, so nothing will be pushed
+        until the forecast changes.  The watch has to keep asking until a phone hears it.
+     */
+    public void testWatchAsksUntilPhoneInReach() throws Exception {
+        WeatherPayload payload = WearableService.queryPayload(mContext);
+        WearableService.setLastSentHash(mContext, payload.contentHash());
+        int inReachMinute = 3 * WRIST_RAISE_INTERVAL_MINUTES + 5;
+
+        Day day = simulate(true, inReachMinute);
+
+        // Asks each time it wakes out of reach, and once more after
+        int firstAskInReach = (inReachMinute / WRIST_RAISE_INTERVAL_MINUTES + 1)
+                * WRIST_RAISE_INTERVAL_MINUTES;
+        assertEquals("Error: the watch gave up asking before a phone heard it",
+                inReachMinute / WRIST_RAISE_INTERVAL_MINUTES + 2, day.messages);
+        assertEquals("Error: the watch should stop asking once a phone has heard it",
+                1, day.delivered);
+        assertEquals("Error: the watch got the weather at the wrong time",
+                firstAskInReach, day.firstWeatherMinute);
+        assertWatchUpToDate(day);
+    }
+
+    private void assertWatchUpToDate(Day day) {
+        WeatherPayload expected = WearableService.queryPayload(mContext);
+        assertNotNull("Error: the watch never got the weather", day.watchWeather);
+        assertEquals("Error: the watch was left with stale weather",
+                expected.contentHash(), day.watchWeather.contentHash());
+    }
+
+    /*
+        Runs through the day a minute at a time.  Every sync and message is handled to the end
+        before the next, as they would be minutes or hours apart.  Until phoneInReachMinute the
+        watch's messages go nowhere and the phone's puts wait in its data layer.
+     */
+    private Day simulate(boolean pushing, int phoneInReachMinute) throws Exception {
+        Day day = new Day();
+        CountingTransport transport = new CountingTransport();
+        WearLink link = new WearLink(transport);
+        Watch watch = new Watch();
+        int sync = 0;
+        for (int minute = 0; minute < MINUTES_IN_DAY; minute++) {
+            boolean inReach = minute >= phoneInReachMinute;
+            if (pushing) {
+                if (inReach) {
+                    // Whatever the phone put while out of reach arrives now.
+                    watch.receive(transport);
+                }
+                if (minute % WRIST_RAISE_INTERVAL_MINUTES == 0
+                        && watch.weather.onConnected(watch.dataLayer)) {
+                    day.messages++;
+                    if (inReach) {
+                        day.delivered++;
+                        watch.weather.onRequestDelivered();
+                        send(link, true);
+                        watch.receive(transport);
+                    }
+                }
+            } else {
+                if (minute % POLL_INTERVAL_MINUTES == 0) {
+                    day.messages++;
+                    send(link, true);
+                }
+                if (minute % WRIST_RAISE_INTERVAL_MINUTES == 0) {
+                    // Out of ambient and back in
+                    day.messages += 2;
+                    send(link, true);
+                    send(link, true);
+                }
+            }
+            if (minute % SYNC_INTERVAL_MINUTES == 0) {
+                if (isChanged(sync)) {
+                    warmToday(sync);
+                }
+                // Polling phones sent after every sync whatever happened.
+                send(link, !pushing);
+                sync++;
+            }
+            if (minute == UNITS_CHANGE_MINUTE) {
+                flipUnits();
+                // Polling phones left it to the next poll.
+                if (pushing) {
+                    send(link, false);
+                }
+            }
+            if (pushing && inReach) {
+                watch.receive(transport);
+            }
+            if (day.firstWeatherMinute == -1 && watch.weather.getWeather() != null) {
+                day.firstWeatherMinute = minute;
+            }
+        }
+        day.puts = transport.puts;
+        day.watchWeather = watch.weather.getWeather();
+        return day;
+    }
+
+    private void send(WearLink link, boolean force) throws InterruptedException {
+        WearableService.sendData(mContext, force, link);
+        awaitIdle(link);
+    }
+
+    private static boolean isChanged(int sync) {
+        for (int changed : CHANGED_SYNCS) {
+            if (changed == sync) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void warmToday(int sync) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 30 + sync);
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        mContext.getContentResolver().update(WeatherContract.WeatherEntry.CONTENT_URI, values,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(today)});
+    }
+
+    private void flipUnits() {
+        String metric = mContext.getString(R.string.pref_units_metric);
+        String units = getPreferences().getString(mContext.getString(R.string.pref_units_key),
+                metric);
+        getPreferences().edit().putString(mContext.getString(R.string.pref_units_key),
+                metric.equals(units) ? mContext.getString(R.string.pref_units_imperial) : metric)
+                .commit();
+    }
+
+    private static void awaitIdle(WearLink link) throws InterruptedException {
+        final CountDownLatch idle = new CountDownLatch(1);
+        link.execute(new Runnable() {
+            @Override
+            public void run() {
+                idle.countDown();
+            }
+        });
+        assertTrue("Error: the link never caught up", idle.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    private void startDay() throws Exception {
+        deleteAll();
+        TestWearableService.insertForecast(mContext);
+    }
+
+    private void restoreUnits() {
+        getPreferences().edit().putString(mContext.getString(R.string.pref_units_key), mUnits)
+                .commit();
+    }
+
+    private SharedPreferences getPreferences() {
+        return PreferenceManager.getDefaultSharedPreferences(mContext);
+    }
+
+    private void deleteAll() {
+        WearableService.setLastSentHash(mContext, 0);
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private static class Day {
+        // Requests the watch sent, and how many of them reached the phone
+        int messages;
+        int delivered;
+        int puts;
+        int firstWeatherMinute = -1;
+        WeatherPayload watchWeather;
+    }
+
+    /*
+        The pushing watch face: its data layer, and the WatchWeather that reads it.
+     */
+    private static class Watch {
+        final WatchWeather weather = new WatchWeather();
+        DataMap dataLayer;
+
+        /*
+            Syncs the phone's latest put into the data layer; if it's new, the watch face's
+            listener hears about it.
+         */
+        void receive(CountingTransport transport) {
+            DataMap latest = transport.latest;
+            if (latest != null && latest != dataLayer) {
+                dataLayer = latest;
+                weather.onWeather(latest);
+            }
+        }
+    }
+
+    private static class CountingTransport implements WearLink.Transport {
+        // Only touched on the link's thread, and read after awaitIdle
+        volatile int puts;
+        volatile DataMap latest;
+
+        @Override
+        public boolean connect() {
+            return true;
+        }
+
+        @Override
+        public boolean putDataItem(PutDataRequest request) {
+            puts++;
+            if (WeatherPayload.PATH.equals(request.getUri().getPath())) {
+                latest = DataMap.fromByteArray(request.getData());
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.wear.WeatherPayload;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.PutDataMapRequest;
+
+import java.io.ByteArrayOutputStream;
+
+/*
+    Checks that the payload sent to the watch holds the stored forecast and reads back the same
+    on the other end, that a forecast the watch already has isn't sent again, and measures how
+    much smaller the payload is than the string and PNG the watch was sent before.
+ */
+public class TestWearableService extends AndroidTestCase {
+    public static final String LOG_TAG = TestWearableService.class.getSimpleName();
+
+    // The forecast a sync stores is longer than the watch is sent.
+    private static final int STORED_DAYS = 14;
+    // What used to be sent: both temperatures in one string, and the art as a PNG.
+    private static final int LEGACY_IMAGE_SIZE = 96;
+    // A generous ceiling; a payload anywhere near it has grown something it shouldn't.
+    private static final int MAX_PAYLOAD_BYTES = 512;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    public void testPayloadMatchesProvider() throws Exception {
+        ForecastJsonParser.Forecast forecast = insertForecast(mContext);
+
+        WeatherPayload payload = WearableService.queryPayload(mContext);
+        assertNotNull("Error: no payload for a stored forecast", payload);
+        assertTrue("Error: no days in the payload", payload.getDayCount() > 0);
+        assertTrue("Error: the watch was sent the whole forecast",
+                payload.getDayCount() < STORED_DAYS);
+        assertEquals("Error: wrong units", Utility.isMetric(mContext), payload.metric);
+        for (int i = 0; i < payload.getDayCount(); i++) {
+            ContentValues day = forecast.days.get(i);
+            assertEquals("Error: wrong date for day " + i,
+                    (long) day.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE),
+                    payload.getDate(i));
+            assertEquals("Error: wrong weather for day " + i,
+                    (int) day.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID),
+                    payload.getWeatherId(i));
+            assertEquals("Error: wrong high for day " + i,
+                    day.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP).floatValue(),
+                    payload.getHighCelsius(i));
+            assertEquals("Error: wrong low for day " + i,
+                    day.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP).floatValue(),
+                    payload.getLowCelsius(i));
+        }
+
+        DataMap sent = new DataMap();
+        payload.writeTo(sent);
+        WeatherPayload received = WeatherPayload.fromDataMap(DataMap.fromByteArray(sent.toByteArray()));
+        assertNotNull("Error: the watch couldn't read the payload", received);
+        assertEquals("Error: the payload lost its timestamp", payload.timestamp, received.timestamp);
+        assertEquals("Error: the payload lost its units", payload.metric, received.metric);
+        assertEquals("Error: the payload lost days", payload.getDayCount(), received.getDayCount());
+        for (int i = 0; i < payload.getDayCount(); i++) {
+            assertEquals("Error: day " + i + " changed on the way",
+                    payload.getDate(i), received.getDate(i));
+            assertEquals("Error: day " + i + " changed on the way",
+                    payload.getWeatherId(i), received.getWeatherId(i));
+            assertEquals("Error: day " + i + " changed on the way",
+                    payload.getHigh(i), received.getHigh(i));
+            assertEquals("Error: day " + i + " changed on the way",
+                    payload.getLow(i), received.getLow(i));
+        }
+    }
+
+    public void testUnknownVersionIgnored() {
+        WeatherPayload payload = new WeatherPayload(0, true, new long[]{0}, new int[]{800},
+                new float[]{20}, new float[]{10});
+        DataMap map = new DataMap();
+        payload.writeTo(map);
+        map.putInt("v", WeatherPayload.VERSION + 1);
+        assertNull("Error: read a payload from a newer phone as if it were this version",
+                WeatherPayload.fromDataMap(map));
+        assertNull("Error: read a payload out of an empty data map",
+                WeatherPayload.fromDataMap(new DataMap()));
+    }
+
+    public void testContentHash() {
+        WeatherPayload payload = new WeatherPayload(1000, true, new long[]{0, 1}, new int[]{800, 500},
+                new float[]{20, 18}, new float[]{10, 9});
+        WeatherPayload later = new WeatherPayload(2000, true, new long[]{0, 1}, new int[]{800, 500},
+                new float[]{20, 18}, new float[]{10, 9});
+        assertEquals("Error: the same forecast sent later counts as a change",
+                payload.contentHash(), later.contentHash());
+        WeatherPayload warmer = new WeatherPayload(1000, true, new long[]{0, 1}, new int[]{800, 500},
+                new float[]{20, 18.5f}, new float[]{10, 9});
+        assertFalse("Error: a warmer day doesn't count as a change",
+                payload.contentHash() == warmer.contentHash());
+        WeatherPayload rainy = new WeatherPayload(1000, true, new long[]{0, 1}, new int[]{500, 500},
+                new float[]{20, 18}, new float[]{10, 9});
+        assertFalse("Error: rain instead of sun doesn't count as a change",
+                payload.contentHash() == rainy.contentHash());
+        WeatherPayload imperial = new WeatherPayload(1000, false, new long[]{0, 1},
+                new int[]{800, 500}, new float[]{20, 18}, new float[]{10, 9});
+        assertFalse("Error: switching units doesn't count as a change",
+                payload.contentHash() == imperial.contentHash());
+    }
+
+    public void testUnchangedForecastNotSent() throws Exception {
+        insertForecast(mContext);
+        WearableService.setLastSentHash(mContext,
+                WearableService.queryPayload(mContext).contentHash());
+        long sent = WearableService.getSentCount();
+        long suppressed = WearableService.getSuppressedCount();
+        WearableService.sendData(mContext);
+        assertEquals("Error: the watch's forecast wasn't recognized as unchanged",
+                suppressed + 1, WearableService.getSuppressedCount());
+        assertEquals("Error: an unchanged forecast was sent", sent, WearableService.getSentCount());
+    }
+
+    public void testNoPayloadWithoutForecast() {
+        assertNull("Error: a payload was made up for an empty database",
+                WearableService.queryPayload(mContext));
+    }
+
+    /*
+        Logs how many bytes each update puts on the link now and did before, and fails if the
+        payload has grown past MAX_PAYLOAD_BYTES or isn't smaller than what it replaced.
+     */
+    public void testPayloadSize() throws Exception {
+        insertForecast(mContext);
+        WeatherPayload payload = WearableService.queryPayload(mContext);
+        PutDataMapRequest request = PutDataMapRequest.create(WeatherPayload.PATH);
+        payload.writeTo(request.getDataMap());
+        int payloadBytes = request.asPutDataRequest().getData().length;
+
+        PutDataMapRequest legacyRequest = PutDataMapRequest.create("/weather_HI_LOW");
+        legacyRequest.getDataMap().putString("weather_HI_LOW",
+                Utility.formatTemperature(mContext, payload.getHighCelsius(0)) + " "
+                        + Utility.formatTemperature(mContext, payload.getLowCelsius(0)));
+        int legacyTextBytes = legacyRequest.asPutDataRequest().getData().length;
+        Bitmap art = BitmapFactory.decodeResource(mContext.getResources(),
+                Utility.getArtResourceForWeatherCondition(payload.getWeatherId(0)));
+        Bitmap scaled = Bitmap.createScaledBitmap(art, LEGACY_IMAGE_SIZE, LEGACY_IMAGE_SIZE, true);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        scaled.compress(Bitmap.CompressFormat.PNG, 100, png);
+        int legacyBytes = legacyTextBytes + png.size();
+
+        Log.i(LOG_TAG, "Bytes per update: " + payloadBytes + " for " + payload.getDayCount()
+                + " days, was " + legacyBytes + " for today (" + legacyTextBytes
+                + " text, " + png.size() + " PNG)");
+        assertTrue("Error: the payload is " + payloadBytes + " bytes",
+                payloadBytes <= MAX_PAYLOAD_BYTES);
+        assertTrue("Error: the payload isn't smaller than the string and PNG it replaced",
+                payloadBytes < legacyBytes);
+    }
+
+    /*
+        Stores a forecast of STORED_DAYS days for the preferred location, starting today.
+     */
+    static ForecastJsonParser.Forecast insertForecast(Context context) throws Exception {
+        String locationSetting = Utility.getPreferredLocation(context);
+        ForecastJsonParser.Forecast forecast =
+                new ForecastJsonParser(ForecastJsonParser.getJulianStartDay())
+                        .parse(TestForecastJsonParser.buildForecastJson(STORED_DAYS));
+        long locationId = ContentUris.parseId(context.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                SunshineSyncAdapter.buildLocationValues(locationSetting, forecast.cityName,
+                        forecast.cityLatitude, forecast.cityLongitude)));
+        for (ContentValues day : forecast.days) {
+            day.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+        }
+        context.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                forecast.days.toArray(new ContentValues[forecast.days.size()]));
+        return forecast;
+    }
+
+    private void deleteAll() {
+        WearableService.setLastSentHash(mContext, 0);
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Weather art for the notification and the widgets, scaled to the size each of them
+ * wants, kept in memory and on disk.
+ *
+ * {@link #get} never waits on the network.  If the art isn't cached yet it hands back the art
+ * built into the app and fetches the art pack's version in the background for next time, so a
+ * sync or a widget update is never held up by a slow download.  {@link #prewarm} fetches every
+ * kind of art up front.
+ */
+public class ArtBitmapCache {
+    private static final String LOG_TAG = ArtBitmapCache.class.getSimpleName();
+
+    // One weather id for each kind of art, as Utility.getArtResourceForWeatherCondition groups them.
+    static final int[] ART_WEATHER_IDS = {200, 300, 500, 600, 701, 800, 801, 802};
+
+    private static final String DISK_CACHE_DIR = "art";
+
+    // The sizes gradle/prescale-art.gradle renders the built in art at, smallest first.
+    private static final String[] PRESCALED_ART = {"list", "notification"};
+
+    private static ArtBitmapCache sInstance;
+
+    private final Context mContext;
+    private final File mDiskCacheDir;
+    private final LruCache<String, Bitmap> mMemoryCache;
+    // One at a time is plenty, and keeps downloads from competing with the forecast itself.
+    private final ExecutorService mFetcher = Executors.newSingleThreadExecutor();
+    private final Set<String> mFetching = new HashSet<String>();
+
+    private final AtomicLong mMemoryHits = new AtomicLong();
+    private final AtomicLong mDiskHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    public static synchronized ArtBitmapCache getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            // A sixteenth of the heap holds every kind of art at a few sizes.
+            int maxKilobytes = (int) (Runtime.getRuntime().maxMemory() / 1024 / 16);
+            sInstance = new ArtBitmapCache(appContext,
+                    new File(appContext.getCacheDir(), DISK_CACHE_DIR), maxKilobytes);
+        }
+        return sInstance;
+    }
+
+    ArtBitmapCache(Context context, File diskCacheDir, int maxKilobytes) {
+        mContext = context;
+        mDiskCacheDir = diskCacheDir;
+        mMemoryCache = new LruCache<String, Bitmap>(maxKilobytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getRowBytes() * bitmap.getHeight() / 1024;
+            }
+        };
+    }
+
+    /**
+     * @return the art for this weather, fitted within the given size, or null if there is no art
+     * for it at all.
+     */
+    public Bitmap get(int weatherId, int width, int height, boolean grayscale) {
+        int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        if (artResourceId == -1) {
+            return null;
+        }
+        // The built in art is the Sunshine pack, so there's nothing to download.
+        String artUrl = Utility.usingLocalGraphics(mContext)
+                ? null : Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+        String key = buildKey(artUrl != null ? artUrl : Integer.toString(artResourceId),
+                width, height, grayscale);
+
+        Bitmap bitmap = mMemoryCache.get(key);
+        if (bitmap != null) {
+            mMemoryHits.incrementAndGet();
+            return bitmap;
+        }
+        bitmap = readFromDisk(key);
+        if (bitmap != null) {
+            mDiskHits.incrementAndGet();
+            mMemoryCache.put(key, bitmap);
+            return bitmap;
+        }
+
+        mMisses.incrementAndGet();
+        if (artUrl != null) {
+            fetch(key, artUrl, width, height, grayscale);
+        }
+        bitmap = decodeResource(artResourceId, width, height);
+        if (bitmap != null && grayscale) {
+            bitmap = toGrayscale(bitmap);
+        }
+        if (bitmap != null && artUrl == null) {
+            mMemoryCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Starts fetching every kind of art at this size that isn't on disk yet.
+     */
+    public void prewarm(int width, int height, boolean grayscale) {
+        if (Utility.usingLocalGraphics(mContext)) {
+            return;
+        }
+        for (int weatherId : ART_WEATHER_IDS) {
+            String artUrl = Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+            String key = buildKey(artUrl, width, height, grayscale);
+            if (!getDiskFile(key).exists()) {
+                fetch(key, artUrl, width, height, grayscale);
+            }
+        }
+    }
+
+    public long getMemoryHitCount() {
+        return mMemoryHits.get();
+    }
+
+    public long getDiskHitCount() {
+        return mDiskHits.get();
+    }
+
+    public long getMissCount() {
+        return mMisses.get();
+    }
+
+    private void fetch(final String key, final String artUrl, final int width, final int height,
+                       final boolean grayscale) {
+        synchronized (mFetching) {
+            if (!mFetching.add(key)) {
+                return;
+            }
+        }
+        mFetcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Bitmap bitmap = Glide.with(mContext)
+                            .load(artUrl)
+                            .asBitmap()
+                            .fitCenter()
+                            .into(width, height).get();
+                    if (grayscale) {
+                        bitmap = toGrayscale(bitmap);
+                    } else {
+                        // Glide recycles its own bitmaps; keep a copy of ours.
+                        bitmap = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+                    }
+                    writeToDisk(key, bitmap);
+                    mMemoryCache.put(key, bitmap);
+                } catch (InterruptedException | ExecutionException e) {
+                    Log.e(LOG_TAG, "Error retrieving art from " + artUrl, e);
+                } finally {
+                    synchronized (mFetching) {
+                        mFetching.remove(key);
+                    }
+                }
+            }
+        });
+    }
+
+    /*
+        The smallest copy of the built in art, pre-scaled at build time, that is at least this
+        big.  At the sizes the app draws art at, that is exactly the right size.
+     */
+    private int findPrescaled(int artResourceId, int width, int height) {
+        Resources resources = mContext.getResources();
+        String name = resources.getResourceEntryName(artResourceId);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        for (String size : PRESCALED_ART) {
+            int id = resources.getIdentifier(name + "_" + size, "drawable",
+                    mContext.getPackageName());
+            if (id == 0) continue;
+            BitmapFactory.decodeResource(resources, id, options);
+            if (options.outWidth >= width && options.outHeight >= height) {
+                return id;
+            }
+        }
+        return artResourceId;
+    }
+
+    private Bitmap decodeResource(int artResourceId, int width, int height) {
+        int resourceId = findPrescaled(artResourceId, width, height);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mContext.getResources(), resourceId, options);
+        options.inSampleSize = 1;
+        while (options.outWidth / (options.inSampleSize * 2) >= width
+                && options.outHeight / (options.inSampleSize * 2) >= height) {
+            options.inSampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        Bitmap bitmap = BitmapFactory.decodeResource(mContext.getResources(), resourceId, options);
+        if (bitmap == null) {
+            return null;
+        }
+        float scale = Math.min((float) width / bitmap.getWidth(), (float) height / bitmap.getHeight());
+        if (scale < 1) {
+            bitmap = Bitmap.createScaledBitmap(bitmap, Math.round(bitmap.getWidth() * scale),
+                    Math.round(bitmap.getHeight() * scale), true);
+        }
+        return bitmap;
+    }
+
+    static Bitmap toGrayscale(Bitmap bitmap) {
+        Bitmap gray = Bitmap.createBitmap(bitmap.getWidth(), bitmap.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        ColorMatrix matrix = new ColorMatrix();
+        matrix.setSaturation(0);
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        paint.setColorFilter(new ColorMatrixColorFilter(matrix));
+        new Canvas(gray).drawBitmap(bitmap, 0, 0, paint);
+        return gray;
+    }
+
+    static String buildKey(String art, int width, int height, boolean grayscale) {
+        return art + "@" + width + "x" + height + (grayscale ? "-gray" : "");
+    }
+
+    private File getDiskFile(String key) {
+        // Keys are mostly URLs.
+        return new File(mDiskCacheDir, key.replaceAll("[^A-Za-z0-9._-]", "_") + ".png");
+    }
+
+    private Bitmap readFromDisk(String key) {
+        File file = getDiskFile(key);
+        return file.exists() ? BitmapFactory.decodeFile(file.getPath()) : null;
+    }
+
+    private void writeToDisk(String key, Bitmap bitmap) {
+        if (!mDiskCacheDir.isDirectory() && !mDiskCacheDir.mkdirs()) {
+            return;
+        }
+        File file = getDiskFile(key);
+        File temp = new File(file.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            out.close();
+            out = null;
+            // Readers never see half a file.
+            if (!temp.renameTo(file)) {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error caching art to " + file, e);
+            temp.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Already failing.
+                }
+            }
+        }
+    }
+}
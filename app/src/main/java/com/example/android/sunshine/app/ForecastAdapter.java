@@ -16,7 +16,6 @@
 package com.example.android.sunshine.app;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
@@ -30,11 +29,10 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * from a {@link ForecastModel} to a {@link android.support.v7.widget.RecyclerView}.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -44,7 +42,8 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
-    private Cursor mCursor;
+    private ForecastModel mModel;
+    private ScrollMetrics mScrollMetrics;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
@@ -73,9 +72,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            mClickHandler.onClick(mModel.getDate(adapterPosition), this);
             mICM.onClick(this);
         }
     }
@@ -90,6 +87,8 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mEmptyView = emptyView;
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
+        // Row _IDs survive a sync, which updates days in place, so selections can follow them.
+        setHasStableIds(true);
     }
 
     /*
@@ -124,8 +123,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        // Only timed while a benchmark is measuring the list
+        long bindStart = null != mScrollMetrics ? System.nanoTime() : 0;
+        int weatherId = mModel.getWeatherId(position);
         int defaultImage;
         boolean useLongToday;
 
@@ -150,39 +150,33 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         }
 
         // this enables better animations. even if we lose state due to a device rotation,
-        // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        // the animator can use this to re-find the original view.  Named by the row's id, as rows
+        // that moved when the days shifted keep their old binding.
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView,
+                "iconView" + mModel.getId(position));
 
         // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
-
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+        forecastAdapterViewHolder.mDateView.setText(mModel.getDay(position, useLongToday));
 
         // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(mModel.getCondition(position));
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mModel.getConditionDescription(position));
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(mModel.getFormattedHigh(position));
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(mModel.getHighDescription(position));
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(mModel.getFormattedLow(position));
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(mModel.getLowDescription(position));
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+
+        if ( null != mScrollMetrics ) {
+            mScrollMetrics.recordBind(System.nanoTime() - bindStart);
+        }
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
@@ -193,6 +187,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mICM.onSaveInstanceState(outState);
     }
 
+    void setScrollMetrics(ScrollMetrics scrollMetrics) {
+        mScrollMetrics = scrollMetrics;
+    }
+
     public void setUseTodayLayout(boolean useTodayLayout) {
         mUseTodayLayout = useTodayLayout;
     }
@@ -208,18 +206,33 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        if ( null == mModel ) return 0;
+        return mModel.getCount();
     }
 
-    public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
-        notifyDataSetChanged();
+    @Override
+    public long getItemId(int position) {
+        if ( null == mModel || position < 0 || position >= mModel.getCount() ) {
+            return RecyclerView.NO_ID;
+        }
+        return mModel.getId(position);
+    }
+
+    public void swapModel(ForecastModel newModel) {
+        ForecastModel oldModel = mModel;
+        mModel = newModel;
+        ForecastDiff changes = null == newModel ? null : newModel.getChanges();
+        if ( null != changes && changes.isFrom(oldModel) ) {
+            // Only rebind the days that look different.
+            changes.dispatchTo(this);
+        } else {
+            notifyDataSetChanged();
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
-    public Cursor getCursor() {
-        return mCursor;
+    public ForecastModel getModel() {
+        return mModel;
     }
 
     public void selectView(RecyclerView.ViewHolder viewHolder) {
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.Arrays;
+
+/**
+ * What changed between one {@link ForecastModel} and the next, as the inserts, removals and
+ * changes an adapter needs to tell its RecyclerView about, so that a sync which changes a day or
+ * two rebinds a day or two rather than every row on screen.
+ *
+ * Both forecasts are in date order, so this is a single walk down the two of them side by side.
+ * A day is the same item in both if it has the same date and the same _ID; it has changed if
+ * anything shown for it reads differently.
+ */
+final class ForecastDiff {
+    private static final int INSERT = 0;
+    private static final int REMOVE = 1;
+    private static final int CHANGE = 2;
+
+    private final int mFromGeneration;
+    // Each operation is a type, a position and a count, in the order they have to be applied.
+    private int[] mOperations = new int[3 * 4];
+    private int mOperationCount;
+
+    private int mInsertedCount;
+    private int mRemovedCount;
+    private int mChangedCount;
+
+    private ForecastDiff(int fromGeneration) {
+        mFromGeneration = fromGeneration;
+    }
+
+    static ForecastDiff compute(ForecastModel from, ForecastModel to) {
+        ForecastDiff diff = new ForecastDiff(from.getGeneration());
+        int fromCount = from.getCount();
+        int toCount = to.getCount();
+        int i = 0;
+        int j = 0;
+        // where the next operation happens, allowing for those already made
+        int position = 0;
+        while (i < fromCount || j < toCount) {
+            if (j == toCount || (i < fromCount && from.getDate(i) < to.getDate(j))) {
+                diff.add(REMOVE, position);
+                i++;
+            } else if (i == fromCount || from.getDate(i) > to.getDate(j)) {
+                diff.add(INSERT, position);
+                position++;
+                j++;
+            } else if (from.getId(i) != to.getId(j)) {
+                // The same day, but stored again from scratch.
+                diff.add(REMOVE, position);
+                diff.add(INSERT, position);
+                position++;
+                i++;
+                j++;
+            } else {
+                // The first row has a layout of its own, so moving in or out of it is a change.
+                if ((i == 0) != (j == 0) || !looksTheSame(from, i, to, j)) {
+                    diff.add(CHANGE, position);
+                }
+                position++;
+                i++;
+                j++;
+            }
+        }
+        return diff;
+    }
+
+    private static boolean looksTheSame(ForecastModel from, int i, ForecastModel to, int j) {
+        return from.getWeatherId(i) == to.getWeatherId(j)
+                && from.getDay(i, true).equals(to.getDay(j, true))
+                && from.getDay(i, false).equals(to.getDay(j, false))
+                && from.getCondition(i).equals(to.getCondition(j))
+                && from.getFormattedHigh(i).equals(to.getFormattedHigh(j))
+                && from.getFormattedLow(i).equals(to.getFormattedLow(j));
+    }
+
+    /*
+        Adds a single item, merging it into the last operation where it carries straight on.
+     */
+    private void add(int type, int position) {
+        switch (type) {
+            case INSERT:
+                mInsertedCount++;
+                break;
+            case REMOVE:
+                mRemovedCount++;
+                break;
+            default:
+                mChangedCount++;
+        }
+        if (mOperationCount > 0) {
+            int last = (mOperationCount - 1) * 3;
+            int lastType = mOperations[last];
+            int lastPosition = mOperations[last + 1];
+            int lastCount = mOperations[last + 2];
+            if (type == lastType && (type == REMOVE ? position == lastPosition
+                    : position == lastPosition + lastCount)) {
+                mOperations[last + 2]++;
+                return;
+            }
+        }
+        if (mOperations.length < (mOperationCount + 1) * 3) {
+            mOperations = Arrays.copyOf(mOperations, mOperations.length * 2);
+        }
+        int next = mOperationCount * 3;
+        mOperations[next] = type;
+        mOperations[next + 1] = position;
+        mOperations[next + 2] = 1;
+        mOperationCount++;
+    }
+
+    /**
+     * @return whether this is the way from that model to the one it came with.
+     */
+    boolean isFrom(ForecastModel model) {
+        return model != null && model.getGeneration() == mFromGeneration;
+    }
+
+    void dispatchTo(RecyclerView.Adapter adapter) {
+        for (int i = 0; i < mOperationCount; i++) {
+            int type = mOperations[i * 3];
+            int position = mOperations[i * 3 + 1];
+            int count = mOperations[i * 3 + 2];
+            switch (type) {
+                case INSERT:
+                    adapter.notifyItemRangeInserted(position, count);
+                    break;
+                case REMOVE:
+                    adapter.notifyItemRangeRemoved(position, count);
+                    break;
+                default:
+                    adapter.notifyItemRangeChanged(position, count);
+            }
+        }
+    }
+
+    int getInsertedCount() {
+        return mInsertedCount;
+    }
+
+    int getRemovedCount() {
+        return mRemovedCount;
+    }
+
+    int getChangedCount() {
+        return mChangedCount;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.text.format.Time;
+import android.util.SparseArray;
+
+import java.text.SimpleDateFormat;
+import java.util.Formatter;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats dates, temperatures and conditions for rows of the forecast, the same way Utility does,
+ * but remembers what it has already formatted.  A forecast only ever shows a couple of weeks of
+ * days and a few dozen distinct temperatures, so once a list has been scrolled through binding a
+ * row finds everything it needs already made and allocates nothing.
+ *
+ * The unit preference is read once and then kept up to date by listening for changes to it.
+ * Everything is thrown away when the day or the locale changes.  Not thread safe; use one per
+ * adapter.
+ */
+public class ForecastFormatter implements SharedPreferences.OnSharedPreferenceChangeListener {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private final Context mContext;
+    private final String mUnitsKey;
+
+    private boolean mIsMetric;
+    // Set on the main thread when the units change, picked up by whichever thread formats next.
+    private volatile boolean mUnitsChanged;
+    private Locale mLocale;
+    private long mGmtOffSeconds;
+    private int mCurrentJulianDay;
+    // When the day after mCurrentJulianDay starts
+    private long mNextDayStartMillis;
+
+    private SimpleDateFormat mDayNameFormat;
+    private SimpleDateFormat mMonthDayFormat;
+    private SimpleDateFormat mShortDateFormat;
+    // Formats a temperature the first time it's seen, without a new Formatter each time.
+    private final StringBuilder mBuilder = new StringBuilder();
+    private Formatter mFormatter;
+
+    // keyed by julian day, twice over so that today can be both the short and long form
+    private final SparseArray<String> mDays = new SparseArray<String>();
+    // keyed by temperatureKey
+    private final SparseArray<String> mTemperatures = new SparseArray<String>();
+    private final SparseArray<String> mHighDescriptions = new SparseArray<String>();
+    private final SparseArray<String> mLowDescriptions = new SparseArray<String>();
+    // keyed by weather id
+    private final SparseArray<String> mConditions = new SparseArray<String>();
+    private final SparseArray<String> mConditionDescriptions = new SparseArray<String>();
+
+    public ForecastFormatter(Context context) {
+        mContext = context.getApplicationContext();
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mIsMetric = Utility.isMetric(mContext);
+        // Preferences only keep a weak reference to their listeners, so this lasts as long as the
+        // formatter does.
+        PreferenceManager.getDefaultSharedPreferences(mContext)
+                .registerOnSharedPreferenceChangeListener(this);
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        if (mUnitsKey.equals(key)) {
+            mUnitsChanged = true;
+        }
+    }
+
+    /**
+     * Same as {@link Utility#getFriendlyDayString}.
+     */
+    public String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        checkForChanges();
+        int julianDay = Time.getJulianDay(dateInMillis, mGmtOffSeconds);
+        boolean longToday = displayLongToday && julianDay == mCurrentJulianDay;
+        int key = julianDay * 2 + (longToday ? 1 : 0);
+        String day = mDays.get(key);
+        if (day == null) {
+            if (longToday) {
+                day = mContext.getString(R.string.format_full_friendly_date,
+                        mContext.getString(R.string.today), mMonthDayFormat.format(dateInMillis));
+            } else if (julianDay == mCurrentJulianDay) {
+                day = mContext.getString(R.string.today);
+            } else if (julianDay == mCurrentJulianDay + 1) {
+                day = mContext.getString(R.string.tomorrow);
+            } else if (julianDay < mCurrentJulianDay + 7) {
+                day = mDayNameFormat.format(dateInMillis);
+            } else {
+                day = mShortDateFormat.format(dateInMillis);
+            }
+            mDays.put(key, day);
+        }
+        return day;
+    }
+
+    /**
+     * @return when the day strings handed out so far stop being right, because today has become
+     * yesterday.
+     */
+    public long getDayEndMillis() {
+        checkForChanges();
+        return mNextDayStartMillis;
+    }
+
+    /**
+     * Same as {@link Utility#formatTemperature}.
+     */
+    public String formatTemperature(double temperature) {
+        checkForChanges();
+        temperature = toPreferredUnits(temperature);
+        int key = temperatureKey(temperature);
+        String formatted = mTemperatures.get(key);
+        if (formatted == null) {
+            mBuilder.setLength(0);
+            mFormatter.format(mContext.getString(R.string.format_temperature), temperature);
+            formatted = mBuilder.toString();
+            mTemperatures.put(key, formatted);
+        }
+        return formatted;
+    }
+
+    /**
+     * @return the content description for a high of this temperature.
+     */
+    public String describeHigh(double temperature) {
+        return describeTemperature(mHighDescriptions, R.string.a11y_high_temp, temperature);
+    }
+
+    /**
+     * @return the content description for a low of this temperature.
+     */
+    public String describeLow(double temperature) {
+        return describeTemperature(mLowDescriptions, R.string.a11y_low_temp, temperature);
+    }
+
+    /**
+     * Same as {@link Utility#getStringForWeatherCondition}.
+     */
+    public String getCondition(int weatherId) {
+        checkForChanges();
+        String condition = mConditions.get(weatherId);
+        if (condition == null) {
+            condition = Utility.getStringForWeatherCondition(mContext, weatherId);
+            mConditions.put(weatherId, condition);
+        }
+        return condition;
+    }
+
+    /**
+     * @return the content description for this weather.
+     */
+    public String describeCondition(int weatherId) {
+        String description = mConditionDescriptions.get(weatherId);
+        if (description == null) {
+            description = mContext.getString(R.string.a11y_forecast, getCondition(weatherId));
+            mConditionDescriptions.put(weatherId, description);
+        }
+        return description;
+    }
+
+    private String describeTemperature(SparseArray<String> descriptions, int formatId,
+                                       double temperature) {
+        String formatted = formatTemperature(temperature);
+        int key = temperatureKey(toPreferredUnits(temperature));
+        String description = descriptions.get(key);
+        if (description == null) {
+            description = mContext.getString(formatId, formatted);
+            descriptions.put(key, description);
+        }
+        return description;
+    }
+
+    private double toPreferredUnits(double temperature) {
+        // Data stored in Celsius by default.
+        return mIsMetric ? temperature : (temperature * 1.8) + 32;
+    }
+
+    /*
+        Temperatures are shown to the nearest degree, so every temperature that rounds to the same
+        whole number looks the same.  Rounds half away from zero as format_temperature's %1.0f
+        does, and keeps the sign so that -0.3 stays "-0" as it always has.
+     */
+    private static int temperatureKey(double temperature) {
+        boolean negative = temperature < 0;
+        int degrees = (int) (Math.abs(temperature) + 0.5);
+        return degrees * 2 + (negative ? 1 : 0);
+    }
+
+    private void checkForChanges() {
+        if (mUnitsChanged) {
+            mUnitsChanged = false;
+            mIsMetric = Utility.isMetric(mContext);
+            clearTemperatures();
+        }
+        long now = System.currentTimeMillis();
+        Locale locale = Locale.getDefault();
+        if (locale.equals(mLocale) && now < mNextDayStartMillis) {
+            return;
+        }
+        if (!locale.equals(mLocale)) {
+            mLocale = locale;
+            mDayNameFormat = new SimpleDateFormat("EEEE", locale);
+            mMonthDayFormat = new SimpleDateFormat("MMMM dd", locale);
+            mShortDateFormat = new SimpleDateFormat("EEE MMM dd", locale);
+            mFormatter = new Formatter(mBuilder, locale);
+            clearTemperatures();
+            mConditions.clear();
+            mConditionDescriptions.clear();
+        }
+        TimeZone timeZone = TimeZone.getDefault();
+        mDayNameFormat.setTimeZone(timeZone);
+        mMonthDayFormat.setTimeZone(timeZone);
+        mShortDateFormat.setTimeZone(timeZone);
+        mGmtOffSeconds = timeZone.getOffset(now) / 1000;
+        mCurrentJulianDay = Time.getJulianDay(now, mGmtOffSeconds);
+        // Midnight local time, as near as matters for a list of days.
+        long millisIntoDay = (now + mGmtOffSeconds * 1000) % DAY_IN_MILLIS;
+        mNextDayStartMillis = now - millisIntoDay + DAY_IN_MILLIS;
+        mDays.clear();
+    }
+
+    private void clearTemperatures() {
+        mTemperatures.clear();
+        mHighDescriptions.clear();
+        mLowDescriptions.clear();
+    }
+}
@@ -20,7 +20,6 @@ import android.app.Activity;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.TypedArray;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -28,7 +27,6 @@ import android.preference.PreferenceManager;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.LinearLayoutManager;
@@ -51,7 +49,7 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 /**
  * Encapsulates fetching the forecast and displaying it as a {@link android.support.v7.widget.RecyclerView} layout.
  */
-public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>, SharedPreferences.OnSharedPreferenceChangeListener {
+public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<ForecastModel>, SharedPreferences.OnSharedPreferenceChangeListener {
     public static final String LOG_TAG = ForecastFragment.class.getSimpleName();
     private ForecastAdapter mForecastAdapter;
     private RecyclerView mRecyclerView;
@@ -59,41 +57,13 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private int mChoiceMode;
     private boolean mHoldForTransition;
     private long mInitialSelectedDate = -1;
+    // Only set while a benchmark is measuring the list
+    private ScrollMetrics mScrollMetrics;
+    private long mScrollCallbacksStart;
 
     private static final String SELECTED_KEY = "selected_position";
 
     private static final int FORECAST_LOADER = 0;
-    // For the forecast view we're showing only a small subset of the stored data.
-    // Specify the columns we need.
-    private static final String[] FORECAST_COLUMNS = {
-            // In this case the id needs to be fully qualified with a table name, since
-            // the content provider joins the location & weather tables in the background
-            // (both have an _id column)
-            // On the one hand, that's annoying.  On the other, you can search the weather table
-            // using the location set by the user, which is only in the Location table.
-            // So the convenience is worth it.
-            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
-            WeatherContract.WeatherEntry.COLUMN_DATE,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
-            WeatherContract.LocationEntry.COLUMN_COORD_LONG
-    };
-
-    // These indices are tied to FORECAST_COLUMNS.  If FORECAST_COLUMNS changes, these
-    // must change.
-    static final int COL_WEATHER_ID = 0;
-    static final int COL_WEATHER_DATE = 1;
-    static final int COL_WEATHER_DESC = 2;
-    static final int COL_WEATHER_MAX_TEMP = 3;
-    static final int COL_WEATHER_MIN_TEMP = 4;
-    static final int COL_LOCATION_SETTING = 5;
-    static final int COL_WEATHER_CONDITION_ID = 6;
-    static final int COL_COORD_LAT = 7;
-    static final int COL_COORD_LONG = 8;
 
     /**
      * A callback interface that all activities containing this fragment must
@@ -175,8 +145,32 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // Get a reference to the RecyclerView, and attach this adapter to it.
         mRecyclerView = (RecyclerView) rootView.findViewById(R.id.recyclerview_forecast);
 
-        // Set the layout manager
-        mRecyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
+        // Set the layout manager.  It only times itself while a benchmark is measuring the list.
+        mRecyclerView.setLayoutManager(new LinearLayoutManager(getActivity()) {
+            @Override
+            public void onLayoutChildren(RecyclerView.Recycler recycler, RecyclerView.State state) {
+                ScrollMetrics scrollMetrics = mScrollMetrics;
+                if (null == scrollMetrics) {
+                    super.onLayoutChildren(recycler, state);
+                    return;
+                }
+                long start = System.nanoTime();
+                super.onLayoutChildren(recycler, state);
+                scrollMetrics.recordLayout(System.nanoTime() - start);
+            }
+
+            @Override
+            public int scrollVerticallyBy(int dy, RecyclerView.Recycler recycler, RecyclerView.State state) {
+                ScrollMetrics scrollMetrics = mScrollMetrics;
+                if (null == scrollMetrics) {
+                    return super.scrollVerticallyBy(dy, recycler, state);
+                }
+                long start = System.nanoTime();
+                int scrolled = super.scrollVerticallyBy(dy, recycler, state);
+                scrollMetrics.recordLayout(System.nanoTime() - start);
+                return scrolled;
+            }
+        });
         View emptyView = rootView.findViewById(R.id.recyclerview_forecast_empty);
 
         // use this setting to improve performance if you know that changes
@@ -200,6 +194,17 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
 
+        // Scroll listeners run in the order they're added; this one and the one after the
+        // parallax and app bar listeners time them all, while a benchmark is measuring the list.
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (null != mScrollMetrics) {
+                    mScrollCallbacksStart = System.nanoTime();
+                }
+            }
+        });
+
         final View parallaxView = rootView.findViewById(R.id.parallax_bar);
         if (null != parallaxView) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
@@ -237,6 +242,17 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             }
         }
 
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                // Only if the first listener took the start time, which it may not have if the
+                // benchmark attached in between
+                if (null != mScrollMetrics && 0 != mScrollCallbacksStart) {
+                    mScrollMetrics.recordScrollCallbacks(System.nanoTime() - mScrollCallbacksStart);
+                }
+            }
+        });
+
         // If there's instance state, mine it for useful information.
         // The end-goal here is that the user never knows that turning their device sideways
         // does crazy lifecycle related things.  It should feel like some stuff stretched out,
@@ -273,11 +289,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // intent can is detailed in the "Common Intents" page of Android's developer site:
         // http://developer.android.com/guide/components/intents-common.html#Maps
         if (null != mForecastAdapter) {
-            Cursor c = mForecastAdapter.getCursor();
-            if (null != c) {
-                c.moveToPosition(0);
-                String posLat = c.getString(COL_COORD_LAT);
-                String posLong = c.getString(COL_COORD_LONG);
+            ForecastModel model = mForecastAdapter.getModel();
+            if (null != model && model.getCount() > 0) {
+                String posLat = model.getCoordLat();
+                String posLong = model.getCoordLong();
                 Uri geoLocation = Uri.parse("geo:" + posLat + "," + posLong);
 
                 Intent intent = new Intent(Intent.ACTION_VIEW);
@@ -302,31 +317,15 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
 
     @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
+    public Loader<ForecastModel> onCreateLoader(int i, Bundle bundle) {
         // This is called when a new Loader needs to be created.  This
         // fragment only uses one loader, so we don't care about checking the id.
-
-        // To only show current and future dates, filter the query to return weather only for
-        // dates after or including today.
-
-        // Sort order:  Ascending, by date.
-        String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
-
-        String locationSetting = Utility.getPreferredLocation(getActivity());
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                locationSetting, System.currentTimeMillis());
-
-        return new CursorLoader(getActivity(),
-                weatherForLocationUri,
-                FORECAST_COLUMNS,
-                null,
-                null,
-                sortOrder);
+        return new ForecastLoader(getActivity());
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        mForecastAdapter.swapCursor(data);
+    public void onLoadFinished(Loader<ForecastModel> loader, ForecastModel data) {
+        mForecastAdapter.swapModel(data);
         updateEmptyView();
         if ( data.getCount() == 0 ) {
             getActivity().supportStartPostponedEnterTransition();
@@ -341,15 +340,9 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                         int position = mForecastAdapter.getSelectedItemPosition();
                         if (position == RecyclerView.NO_POSITION &&
                                 -1 != mInitialSelectedDate) {
-                            Cursor data = mForecastAdapter.getCursor();
-                            int count = data.getCount();
-                            int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-                            for ( int i = 0; i < count; i++ ) {
-                                data.moveToPosition(i);
-                                if ( data.getLong(dateColumn) == mInitialSelectedDate ) {
-                                    position = i;
-                                    break;
-                                }
+                            int index = mForecastAdapter.getModel().indexOfDate(mInitialSelectedDate);
+                            if (index != -1) {
+                                position = index;
                             }
                         }
                         if (position == RecyclerView.NO_POSITION) position = 0;
@@ -383,8 +376,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        mForecastAdapter.swapCursor(null);
+    public void onLoaderReset(Loader<ForecastModel> loader) {
+        mForecastAdapter.swapModel(null);
     }
 
     public void setUseTodayLayout(boolean useTodayLayout) {
@@ -394,6 +387,15 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         }
     }
 
+    /**
+     * Starts recording binds, layouts and scroll listeners into scrollMetrics, or stops if null.
+     */
+    void setScrollMetrics(ScrollMetrics scrollMetrics) {
+        mScrollMetrics = scrollMetrics;
+        mScrollCallbacksStart = 0;
+        mForecastAdapter.setScrollMetrics(scrollMetrics);
+    }
+
     public void setInitialSelectedDate(long initialSelectedDate) {
         mInitialSelectedDate = initialSelectedDate;
     }
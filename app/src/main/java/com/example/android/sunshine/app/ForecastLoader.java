@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.Locale;
+
+/**
+ * Loads the forecast for the preferred location, from today on, into a {@link ForecastModel}.
+ * Works like a CursorLoader, reloading whenever the forecast changes, except that the Cursor is
+ * read and closed on the loader's thread and never reaches the list.
+ */
+public class ForecastLoader extends AsyncTaskLoader<ForecastModel> {
+
+    // For the forecast view we're showing only a small subset of the stored data.
+    // Specify the columns we need.
+    static final String[] FORECAST_COLUMNS = {
+            // In this case the id needs to be fully qualified with a table name, since
+            // the content provider joins the location & weather tables in the background
+            // (both have an _id column)
+            // On the one hand, that's annoying.  On the other, you can search the weather table
+            // using the location set by the user, which is only in the Location table.
+            // So the convenience is worth it.
+            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // These indices are tied to FORECAST_COLUMNS.  If FORECAST_COLUMNS changes, these
+    // must change.
+    static final int COL_WEATHER_ID = 0;
+    static final int COL_WEATHER_DATE = 1;
+    static final int COL_WEATHER_DESC = 2;
+    static final int COL_WEATHER_MAX_TEMP = 3;
+    static final int COL_WEATHER_MIN_TEMP = 4;
+    static final int COL_LOCATION_SETTING = 5;
+    static final int COL_WEATHER_CONDITION_ID = 6;
+    static final int COL_COORD_LAT = 7;
+    static final int COL_COORD_LONG = 8;
+
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    // Only ever used on the loader's thread, one load at a time.
+    private final ForecastFormatter mFormatter;
+    private final Uri mUri;
+
+    // The model last delivered; read by the loader's thread to work out what changed.
+    private volatile ForecastModel mModel;
+    private Locale mModelLocale;
+    private boolean mObserving;
+
+    public ForecastLoader(Context context) {
+        super(context);
+        mFormatter = new ForecastFormatter(context);
+        // To only show current and future dates, filter the query to return weather only for
+        // dates after or including today.
+        mUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                Utility.getPreferredLocation(context), System.currentTimeMillis());
+    }
+
+    @Override
+    public ForecastModel loadInBackground() {
+        Locale locale = Locale.getDefault();
+        // Sort order:  Ascending, by date.
+        Cursor cursor = getContext().getContentResolver().query(mUri, FORECAST_COLUMNS, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return ForecastModel.EMPTY;
+        }
+        try {
+            ForecastModel model = ForecastModel.fromCursor(cursor, mFormatter, mModel);
+            synchronized (this) {
+                mModelLocale = locale;
+            }
+            return model;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public void deliverResult(ForecastModel model) {
+        if (isReset()) {
+            return;
+        }
+        mModel = model;
+        if (isStarted()) {
+            super.deliverResult(model);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserving) {
+            getContext().getContentResolver().registerContentObserver(mUri, true, mObserver);
+            mObserving = true;
+        }
+        if (mModel != null) {
+            deliverResult(mModel);
+        }
+        boolean contentChanged = takeContentChanged();
+        if (mModel == null || contentChanged || isOutOfDate()) {
+            forceLoad();
+        }
+    }
+
+    /*
+        The model has its days and temperatures already written out, so it has to be made again
+        once they'd read differently: after midnight, or in another language.
+     */
+    private boolean isOutOfDate() {
+        synchronized (this) {
+            if (!Locale.getDefault().equals(mModelLocale)) {
+                return true;
+            }
+        }
+        return mModel.isStale(System.currentTimeMillis());
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mObserving) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserving = false;
+        }
+        mModel = null;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.Cursor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The forecast the list shows, read out of its Cursor once and formatted ahead of time, so that
+ * binding a row is a few array reads rather than a trip to the Cursor's window.
+ *
+ * Each column is its own array, indexed by position in the list.  Never changes once built;
+ * {@link ForecastLoader} builds a new one whenever the forecast does, along with a
+ * {@link ForecastDiff} from the last one.
+ */
+public final class ForecastModel {
+    public static final ForecastModel EMPTY = new ForecastModel(0, null, null, null, 0);
+
+    private static final AtomicInteger sGenerations = new AtomicInteger();
+
+    // Tells models apart without a ForecastDiff having to hold on to the one it started from.
+    private final int mGeneration = sGenerations.incrementAndGet();
+    private final int mCount;
+    private final long[] mIds;
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final float[] mHighs;
+    private final float[] mLows;
+
+    private final String[] mDays;
+    // Just for the first row, when it's today and gets the long form
+    private final String mLongFirstDay;
+    private final String[] mConditions;
+    private final String[] mConditionDescriptions;
+    private final String[] mFormattedHighs;
+    private final String[] mHighDescriptions;
+    private final String[] mFormattedLows;
+    private final String[] mLowDescriptions;
+
+    private final String mCoordLat;
+    private final String mCoordLong;
+    // After this, "Today" and "Tomorrow" point at the wrong days.
+    private final long mStaleAtMillis;
+    // How this model differs from the one loaded before it, if there was one.
+    private ForecastDiff mChanges;
+
+    private ForecastModel(int count, String longFirstDay, String coordLat, String coordLong,
+                          long staleAtMillis) {
+        mCount = count;
+        mIds = new long[count];
+        mDates = new long[count];
+        mWeatherIds = new int[count];
+        mHighs = new float[count];
+        mLows = new float[count];
+        mDays = new String[count];
+        mLongFirstDay = longFirstDay;
+        mConditions = new String[count];
+        mConditionDescriptions = new String[count];
+        mFormattedHighs = new String[count];
+        mHighDescriptions = new String[count];
+        mFormattedLows = new String[count];
+        mLowDescriptions = new String[count];
+        mCoordLat = coordLat;
+        mCoordLong = coordLong;
+        mStaleAtMillis = staleAtMillis;
+    }
+
+    /**
+     * Reads every row of a cursor over ForecastLoader.FORECAST_COLUMNS.  Leaves the cursor open.
+     *
+     * @param previous the model the list is showing now, if any, to work out what changed since.
+     */
+    static ForecastModel fromCursor(Cursor cursor, ForecastFormatter formatter,
+                                    ForecastModel previous) {
+        ForecastModel model = readCursor(cursor, formatter);
+        if (previous != null && (model.mCount > 0 || previous.mCount > 0)) {
+            if (model == EMPTY) {
+                model = new ForecastModel(0, null, null, null, 0);
+            }
+            model.mChanges = ForecastDiff.compute(previous, model);
+        }
+        return model;
+    }
+
+    private static ForecastModel readCursor(Cursor cursor, ForecastFormatter formatter) {
+        int count = cursor.getCount();
+        if (count == 0 || !cursor.moveToFirst()) {
+            return EMPTY;
+        }
+        ForecastModel model = new ForecastModel(count,
+                formatter.getFriendlyDayString(cursor.getLong(ForecastLoader.COL_WEATHER_DATE), true),
+                cursor.getString(ForecastLoader.COL_COORD_LAT),
+                cursor.getString(ForecastLoader.COL_COORD_LONG),
+                formatter.getDayEndMillis());
+        int i = 0;
+        do {
+            long date = cursor.getLong(ForecastLoader.COL_WEATHER_DATE);
+            int weatherId = cursor.getInt(ForecastLoader.COL_WEATHER_CONDITION_ID);
+            double high = cursor.getDouble(ForecastLoader.COL_WEATHER_MAX_TEMP);
+            double low = cursor.getDouble(ForecastLoader.COL_WEATHER_MIN_TEMP);
+            model.mIds[i] = cursor.getLong(ForecastLoader.COL_WEATHER_ID);
+            model.mDates[i] = date;
+            model.mWeatherIds[i] = weatherId;
+            model.mHighs[i] = (float) high;
+            model.mLows[i] = (float) low;
+            model.mDays[i] = formatter.getFriendlyDayString(date, false);
+            model.mConditions[i] = formatter.getCondition(weatherId);
+            model.mConditionDescriptions[i] = formatter.describeCondition(weatherId);
+            model.mFormattedHighs[i] = formatter.formatTemperature(high);
+            model.mHighDescriptions[i] = formatter.describeHigh(high);
+            model.mFormattedLows[i] = formatter.formatTemperature(low);
+            model.mLowDescriptions[i] = formatter.describeLow(low);
+            i++;
+        } while (i < count && cursor.moveToNext());
+        return model;
+    }
+
+    int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @return how this model differs from the one loaded before it, or null if it's the first.
+     */
+    ForecastDiff getChanges() {
+        return mChanges;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public boolean isStale(long nowMillis) {
+        return mCount > 0 && nowMillis >= mStaleAtMillis;
+    }
+
+    /**
+     * @return the weather table's _ID for this row.
+     */
+    public long getId(int position) {
+        return mIds[position];
+    }
+
+    public long getDate(int position) {
+        return mDates[position];
+    }
+
+    /**
+     * @return the position of the forecast for this date, or -1 if there isn't one.
+     */
+    public int indexOfDate(long date) {
+        for (int i = 0; i < mCount; i++) {
+            if (mDates[i] == date) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getWeatherId(int position) {
+        return mWeatherIds[position];
+    }
+
+    public float getHigh(int position) {
+        return mHighs[position];
+    }
+
+    public float getLow(int position) {
+        return mLows[position];
+    }
+
+    /**
+     * @param longToday whether today, if this is today, should be "Today, June 8" rather than
+     *                  just "Today".
+     */
+    public String getDay(int position, boolean longToday) {
+        return longToday && position == 0 ? mLongFirstDay : mDays[position];
+    }
+
+    public String getCondition(int position) {
+        return mConditions[position];
+    }
+
+    public String getConditionDescription(int position) {
+        return mConditionDescriptions[position];
+    }
+
+    public String getFormattedHigh(int position) {
+        return mFormattedHighs[position];
+    }
+
+    public String getHighDescription(int position) {
+        return mHighDescriptions[position];
+    }
+
+    public String getFormattedLow(int position) {
+        return mFormattedLows[position];
+    }
+
+    public String getLowDescription(int position) {
+        return mLowDescriptions[position];
+    }
+
+    /**
+     * @return the latitude of the forecast's location, as stored, or null if there's no forecast.
+     */
+    public String getCoordLat() {
+        return mCoordLat;
+    }
+
+    public String getCoordLong() {
+        return mCoordLong;
+    }
+}
@@ -28,8 +28,8 @@ import android.widget.AbsListView;
 import android.widget.Checkable;
 
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  If the adapter
+ * has stable IDs, checked items follow their IDs when the underlying data changes.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -44,6 +44,21 @@ public class ItemChoiceManager {
             if (mAdapter != null && mAdapter.hasStableIds())
                 confirmCheckedPositionsById(mAdapter.getItemCount());
         }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            onChanged();
+        }
     };
 
     private ItemChoiceManager() {
@@ -53,6 +68,7 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
     /**
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * Records how long the forecast list spends binding rows, laying them out and running its scroll
+ * listeners, and how long each frame takes, while it's attached to a ForecastFragment.  Nothing
+ * is recorded, and nothing costs anything, when it isn't; the benchmarks attach one.
+ *
+ * Everything is recorded on the main thread into arrays allocated up front, so recording doesn't
+ * itself cause garbage collections mid-scroll.  Frames are only recorded on Jelly Bean and up,
+ * where there is a Choreographer.
+ */
+public class ScrollMetrics {
+    // A frame that takes more than one and a half refreshes at 60Hz has missed its vsync.
+    private static final long JANK_FRAME_NANOS = 1000000000L / 60 * 3 / 2;
+
+    private final Samples mBinds;
+    private final Samples mLayouts;
+    private final Samples mScrollCallbacks;
+    private final Samples mFrames;
+    private Object mFrameRecorder;
+
+    /**
+     * @param capacity how many of each kind of sample to keep; later ones are dropped.
+     */
+    public ScrollMetrics(int capacity) {
+        mBinds = new Samples(capacity);
+        mLayouts = new Samples(capacity);
+        mScrollCallbacks = new Samples(capacity);
+        mFrames = new Samples(capacity);
+    }
+
+    void recordBind(long nanos) {
+        mBinds.add(nanos);
+    }
+
+    void recordLayout(long nanos) {
+        mLayouts.add(nanos);
+    }
+
+    void recordScrollCallbacks(long nanos) {
+        mScrollCallbacks.add(nanos);
+    }
+
+    /**
+     * Starts recording frame durations.  Call on the main thread.
+     */
+    public void startFrames() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && mFrameRecorder == null) {
+            FrameRecorder recorder = new FrameRecorder(mFrames);
+            recorder.start();
+            mFrameRecorder = recorder;
+        }
+    }
+
+    /**
+     * Stops recording frame durations.  Call on the main thread.
+     */
+    public void stopFrames() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && mFrameRecorder != null) {
+            ((FrameRecorder) mFrameRecorder).stop();
+            mFrameRecorder = null;
+        }
+    }
+
+    /**
+     * @return everything recorded so far, in milliseconds, as
+     * {"bind": {...}, "layout": {...}, "scrollCallbacks": {...}, "frames": {...}} where each
+     * has the count, mean, p50, p90, p99 and max, and frames also has how many were janky.
+     */
+    public JSONObject toJson() throws JSONException {
+        JSONObject report = new JSONObject();
+        report.put("bind", mBinds.toJson());
+        report.put("layout", mLayouts.toJson());
+        report.put("scrollCallbacks", mScrollCallbacks.toJson());
+        JSONObject frames = mFrames.toJson();
+        int janky = mFrames.countOver(JANK_FRAME_NANOS);
+        frames.put("janky", janky);
+        frames.put("jankyPercent", mFrames.mCount == 0 ? 0 : 100.0 * janky / mFrames.mCount);
+        report.put("frames", frames);
+        return report;
+    }
+
+    private static class Samples {
+        private final long[] mNanos;
+        private int mCount;
+
+        Samples(int capacity) {
+            mNanos = new long[capacity];
+        }
+
+        void add(long nanos) {
+            if (mCount < mNanos.length) {
+                mNanos[mCount++] = nanos;
+            }
+        }
+
+        int countOver(long nanos) {
+            int over = 0;
+            for (int i = 0; i < mCount; i++) {
+                if (mNanos[i] > nanos) over++;
+            }
+            return over;
+        }
+
+        JSONObject toJson() throws JSONException {
+            long[] sorted = Arrays.copyOf(mNanos, mCount);
+            Arrays.sort(sorted);
+            long total = 0;
+            for (long nanos : sorted) {
+                total += nanos;
+            }
+            JSONObject json = new JSONObject();
+            json.put("count", mCount);
+            json.put("meanMs", mCount == 0 ? 0 : toMillis(total / mCount));
+            json.put("p50Ms", percentile(sorted, 50));
+            json.put("p90Ms", percentile(sorted, 90));
+            json.put("p99Ms", percentile(sorted, 99));
+            json.put("maxMs", mCount == 0 ? 0 : toMillis(sorted[mCount - 1]));
+            return json;
+        }
+
+        private static double percentile(long[] sorted, int percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return toMillis(sorted[Math.max(0, index)]);
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / 1000000.0;
+        }
+    }
+
+    /*
+        Records the time between one frame starting and the next.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class FrameRecorder implements Choreographer.FrameCallback {
+        private final Samples mFrames;
+        private long mLastFrameNanos;
+        private boolean mRunning;
+
+        FrameRecorder(Samples frames) {
+            mFrames = frames;
+        }
+
+        void start() {
+            mRunning = true;
+            mLastFrameNanos = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            mRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRunning) {
+                return;
+            }
+            if (mLastFrameNanos != 0) {
+                mFrames.add(frameTimeNanos - mLastFrameNanos);
+            }
+            mLastFrameNanos = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+}
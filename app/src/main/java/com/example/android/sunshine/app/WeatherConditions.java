@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+/**
+ * Everything the app shows for an OpenWeatherMap condition id, worked out once for every id
+ * from 200 to 962 so that the list, the widgets and the sync look it up by indexing an array
+ * rather than walking a chain of range checks for every row they bind.  Which ids share an icon
+ * and art comes from {@link WeatherKinds}, which the watch uses too.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+final class WeatherConditions {
+    static final int FIRST_ID = WeatherKinds.FIRST_ID;
+    static final int LAST_ID = WeatherKinds.LAST_ID;
+
+    // these are indexed by kind, as in WeatherKinds
+    private static final int[] KIND_ICONS = {
+            R.drawable.ic_storm,
+            R.drawable.ic_light_rain,
+            R.drawable.ic_rain,
+            R.drawable.ic_snow,
+            R.drawable.ic_fog,
+            R.drawable.ic_storm,
+            R.drawable.ic_clear,
+            R.drawable.ic_light_clouds,
+            R.drawable.ic_cloudy
+    };
+    private static final int[] KIND_ART = {
+            R.drawable.art_storm,
+            R.drawable.art_light_rain,
+            R.drawable.art_rain,
+            R.drawable.art_snow,
+            R.drawable.art_fog,
+            R.drawable.art_storm,
+            R.drawable.art_clear,
+            R.drawable.art_light_clouds,
+            R.drawable.art_clouds
+    };
+    // What each kind is called in an art pack's URL format
+    private static final String[] KIND_ART_NAMES = {
+            "storm",
+            "light_rain",
+            "rain",
+            "snow",
+            "fog",
+            "storm",
+            "clear",
+            "light_clouds",
+            "clouds"
+    };
+    private static final String[] KIND_IMAGE_URLS = {
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg"
+    };
+
+    // indexed by weather id - FIRST_ID
+    private static final int[] sStringIds = new int[LAST_ID - FIRST_ID + 1];
+
+    static {
+        for (int weatherId = 200; weatherId <= 232; weatherId++) {
+            setString(weatherId, R.string.condition_2xx);
+        }
+        for (int weatherId = 300; weatherId <= 321; weatherId++) {
+            setString(weatherId, R.string.condition_3xx);
+        }
+        setString(500, R.string.condition_500);
+        setString(501, R.string.condition_501);
+        setString(502, R.string.condition_502);
+        setString(503, R.string.condition_503);
+        setString(504, R.string.condition_504);
+        setString(511, R.string.condition_511);
+        setString(520, R.string.condition_520);
+        setString(531, R.string.condition_531);
+        setString(600, R.string.condition_600);
+        setString(601, R.string.condition_601);
+        setString(602, R.string.condition_602);
+        setString(611, R.string.condition_611);
+        setString(612, R.string.condition_612);
+        setString(615, R.string.condition_615);
+        setString(616, R.string.condition_616);
+        setString(620, R.string.condition_620);
+        setString(621, R.string.condition_621);
+        setString(622, R.string.condition_622);
+        setString(701, R.string.condition_701);
+        setString(711, R.string.condition_711);
+        setString(721, R.string.condition_721);
+        setString(731, R.string.condition_731);
+        setString(741, R.string.condition_741);
+        setString(751, R.string.condition_751);
+        setString(761, R.string.condition_761);
+        setString(762, R.string.condition_762);
+        setString(771, R.string.condition_771);
+        setString(781, R.string.condition_781);
+        setString(800, R.string.condition_800);
+        setString(801, R.string.condition_801);
+        setString(802, R.string.condition_802);
+        setString(803, R.string.condition_803);
+        setString(804, R.string.condition_804);
+        setString(900, R.string.condition_900);
+        setString(901, R.string.condition_901);
+        setString(902, R.string.condition_902);
+        setString(903, R.string.condition_903);
+        setString(904, R.string.condition_904);
+        setString(905, R.string.condition_905);
+        setString(906, R.string.condition_906);
+        setString(951, R.string.condition_951);
+        setString(952, R.string.condition_952);
+        setString(953, R.string.condition_953);
+        setString(954, R.string.condition_954);
+        setString(955, R.string.condition_955);
+        setString(956, R.string.condition_956);
+        setString(957, R.string.condition_957);
+        setString(958, R.string.condition_958);
+        setString(959, R.string.condition_959);
+        setString(960, R.string.condition_960);
+        setString(961, R.string.condition_961);
+        setString(962, R.string.condition_962);
+    }
+
+    private WeatherConditions() {
+    }
+
+    private static void setString(int weatherId, int stringId) {
+        sStringIds[weatherId - FIRST_ID] = stringId;
+    }
+
+    /**
+     * @return the string resource describing this weather, or 0 if there isn't one.
+     */
+    static int getStringResource(int weatherId) {
+        return weatherId >= FIRST_ID && weatherId <= LAST_ID ? sStringIds[weatherId - FIRST_ID] : 0;
+    }
+
+    /**
+     * @return the icon resource for this weather, or -1 if there isn't one.
+     */
+    static int getIconResource(int weatherId) {
+        int kind = WeatherKinds.getKind(weatherId);
+        return kind == WeatherKinds.NONE ? -1 : KIND_ICONS[kind];
+    }
+
+    /**
+     * @return the art resource for this weather, or -1 if there isn't one.
+     */
+    static int getArtResource(int weatherId) {
+        int kind = WeatherKinds.getKind(weatherId);
+        return kind == WeatherKinds.NONE ? -1 : KIND_ART[kind];
+    }
+
+    /**
+     * @return the name an art pack's URL format uses for this weather, or null if there isn't one.
+     */
+    static String getArtName(int weatherId) {
+        int kind = WeatherKinds.getKind(weatherId);
+        return kind == WeatherKinds.NONE ? null : KIND_ART_NAMES[kind];
+    }
+
+    /**
+     * @return Muzei's full size image for this weather, or null if there isn't one.
+     */
+    static String getImageUrl(int weatherId) {
+        int kind = WeatherKinds.getKind(weatherId);
+        return kind == WeatherKinds.NONE ? null : KIND_IMAGE_URLS[kind];
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects the URIs WeatherProvider changes over a short window and then notifies each of them
+ * once.  A URI is dropped if another URI in the same window is its ancestor, since notifying
+ * the ancestor already reaches every observer of it.  So a change to one day of one location
+ * is announced as exactly that only if nothing broader changed in the same window: a weather
+ * delete, which notifies {@link WeatherContract.WeatherEntry#CONTENT_URI}, covers every
+ * day of every location, and only that URI goes out.
+ *
+ * Safe to use from any thread; notifications are sent from the main thread.
+ */
+public class NotificationCoalescer {
+    private static final String LOG_TAG = NotificationCoalescer.class.getSimpleName();
+
+    // Long enough to catch the insert, update and delete of one sync, short enough that nobody
+    // looking at the screen notices.
+    static final long DEFAULT_WINDOW_MILLIS = 100;
+
+    private final ContentResolver mContentResolver;
+    private final long mWindowMillis;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Set<Uri> mPending = new LinkedHashSet<Uri>();
+
+    private long mReceivedCount;
+    private long mEmittedCount;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public NotificationCoalescer(ContentResolver contentResolver, long windowMillis) {
+        mContentResolver = contentResolver;
+        mWindowMillis = windowMillis;
+    }
+
+    /**
+     * Schedules a change notification for this URI, unless one is already pending.
+     */
+    public void add(Uri uri) {
+        synchronized (this) {
+            mReceivedCount++;
+            boolean first = mPending.isEmpty();
+            mPending.add(uri);
+            if (!first) return;
+        }
+        mHandler.postDelayed(mFlush, mWindowMillis);
+    }
+
+    public void addAll(Collection<Uri> uris) {
+        for (Uri uri : uris) {
+            add(uri);
+        }
+    }
+
+    /**
+     * Sends the pending notifications now.
+     */
+    public void flush() {
+        mHandler.removeCallbacks(mFlush);
+        List<Uri> uris;
+        synchronized (this) {
+            uris = withoutDescendants(mPending);
+            mPending.clear();
+            mEmittedCount += uris.size();
+        }
+        for (Uri uri : uris) {
+            mContentResolver.notifyChange(uri, null);
+        }
+        if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            Log.d(LOG_TAG, "Notified " + uris + "; " + getEmittedCount() + " emitted, "
+                    + getSuppressedCount() + " suppressed so far");
+        }
+    }
+
+    /**
+     * @return the number of change notifications actually sent.
+     */
+    public synchronized long getEmittedCount() {
+        return mEmittedCount;
+    }
+
+    /**
+     * @return the number of changes that didn't need a notification of their own, because the
+     * same URI or an ancestor of it was notified instead.  Pending changes aren't counted yet.
+     */
+    public synchronized long getSuppressedCount() {
+        return mReceivedCount - mPending.size() - mEmittedCount;
+    }
+
+    /*
+        The given URIs, less any that are a descendant of another one, in their original order.
+        Observers match on the path alone, so anything past it is dropped.
+     */
+    static List<Uri> withoutDescendants(Collection<Uri> uris) {
+        Set<Uri> paths = new LinkedHashSet<Uri>(uris.size());
+        for (Uri uri : uris) {
+            paths.add(uri.buildUpon().clearQuery().fragment(null).build());
+        }
+        List<Uri> kept = new ArrayList<Uri>(paths.size());
+        for (Uri uri : paths) {
+            boolean covered = false;
+            for (Uri other : paths) {
+                if (isProperAncestor(other, uri)) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (!covered) {
+                kept.add(uri);
+            }
+        }
+        return kept;
+    }
+
+    private static boolean isProperAncestor(Uri ancestor, Uri uri) {
+        if (!ancestor.getAuthority().equals(uri.getAuthority())) return false;
+        List<String> ancestorSegments = ancestor.getPathSegments();
+        List<String> segments = uri.getPathSegments();
+        return ancestorSegments.size() < segments.size()
+                && segments.subList(0, ancestorSegments.size()).equals(ancestorSegments);
+    }
+}
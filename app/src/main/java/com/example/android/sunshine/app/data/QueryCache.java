@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+
+import java.util.Arrays;
+
+/**
+ * Keeps copies of recent forecast query results in memory, so the burst of identical queries
+ * the widgets, Muzei, the notification and the wear service make after every sync is answered
+ * without going back to SQLite.
+ *
+ * Every write empties the cache.  To keep a query that was already reading when a write
+ * committed from caching what it read, results are only stored if no write has happened since
+ * the query started; see {@link #getGeneration()}.
+ */
+class QueryCache {
+
+    // Results bigger than this (more than a couple of weeks of forecast) aren't worth copying.
+    static final int MAX_CACHED_ROWS = 32;
+
+    private final LruCache<String, Snapshot> mCache;
+    private long mGeneration;
+    private long mInvalidationCount;
+    private int mInvalidatedEntryCount;
+
+    private static class Snapshot {
+        final String[] columnNames;
+        final Object[][] rows;
+
+        Snapshot(String[] columnNames, Object[][] rows) {
+            this.columnNames = columnNames;
+            this.rows = rows;
+        }
+    }
+
+    QueryCache(int maxEntries) {
+        mCache = new LruCache<String, Snapshot>(maxEntries);
+    }
+
+    /**
+     * Reading cursor values by type needs Cursor.getType, from Honeycomb on.
+     */
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    }
+
+    static String buildKey(int match, Uri uri, String[] projection, String sortOrder) {
+        return match + "|" + uri + "|" + Arrays.toString(projection) + "|" + sortOrder;
+    }
+
+    /**
+     * Take this before reading from the database, and hand it to {@link #put} with the result.
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @return a fresh cursor over the cached result, or null if there isn't one.
+     */
+    Cursor get(String key) {
+        Snapshot snapshot = mCache.get(key);
+        return snapshot != null ? toCursor(snapshot) : null;
+    }
+
+    /**
+     * Caches the result of a query, unless a write has happened since it started.
+     *
+     * @return a cursor to hand back in place of the given one, which may have been closed.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    Cursor put(String key, long generation, Cursor cursor) {
+        if (cursor == null || cursor.getCount() > MAX_CACHED_ROWS) {
+            return cursor;
+        }
+
+        String[] columnNames = cursor.getColumnNames();
+        Object[][] rows = new Object[cursor.getCount()][];
+        cursor.moveToPosition(-1);
+        for (int r = 0; cursor.moveToNext(); r++) {
+            Object[] row = new Object[columnNames.length];
+            for (int i = 0; i < row.length; i++) {
+                switch (cursor.getType(i)) {
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        row[i] = cursor.getLong(i);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        row[i] = cursor.getDouble(i);
+                        break;
+                    case Cursor.FIELD_TYPE_STRING:
+                        row[i] = cursor.getString(i);
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        row[i] = cursor.getBlob(i);
+                        break;
+                    default:
+                        row[i] = null;
+                }
+            }
+            rows[r] = row;
+        }
+        cursor.close();
+
+        Snapshot snapshot = new Snapshot(columnNames, rows);
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mCache.put(key, snapshot);
+            }
+        }
+        return toCursor(snapshot);
+    }
+
+    private static Cursor toCursor(Snapshot snapshot) {
+        MatrixCursor cursor = new MatrixCursor(snapshot.columnNames, snapshot.rows.length);
+        for (Object[] row : snapshot.rows) {
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    /**
+     * Empties the cache.  Call after every committed write.
+     */
+    synchronized void invalidate() {
+        mGeneration++;
+        mInvalidationCount++;
+        mInvalidatedEntryCount += mCache.size();
+        mCache.evictAll();
+    }
+
+    int getHitCount() {
+        return mCache.hitCount();
+    }
+
+    int getMissCount() {
+        return mCache.missCount();
+    }
+
+    /**
+     * @return the number of results pushed out to make room, not counting those invalidated.
+     */
+    synchronized int getEvictionCount() {
+        return mCache.evictionCount() - mInvalidatedEntryCount;
+    }
+
+    synchronized long getInvalidationCount() {
+        return mInvalidationCount;
+    }
+}
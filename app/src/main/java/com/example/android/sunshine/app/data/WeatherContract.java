@@ -47,8 +47,15 @@ public class WeatherContract {
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
     public static long normalizeDate(long startDate) {
+        return normalizeDate(startDate, new Time());
+    }
+
+    /**
+     * Same as {@link #normalizeDate(long)}, reusing the given Time so that normalizing many
+     * dates in a row doesn't allocate one per date.
+     */
+    public static long normalizeDate(long startDate, Time time) {
         // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
         time.set(startDate);
         int julianDay = Time.getJulianDay(startDate, time.gmtoff);
         return time.setJulianDay(julianDay);
@@ -81,6 +88,16 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // HTTP validators from the last forecast response for this location, so the next sync
+        // can ask openweathermap whether anything changed instead of downloading it again.
+        // Either may be null if the server didn't send one.
+        public static final String COLUMN_ETAG = "etag";
+        public static final String COLUMN_LAST_MODIFIED = "last_modified";
+
+        // Time in milliseconds since the epoch until which the last forecast response may be
+        // reused without asking the server at all (from Cache-Control: max-age).
+        public static final String COLUMN_FRESH_UNTIL = "fresh_until";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
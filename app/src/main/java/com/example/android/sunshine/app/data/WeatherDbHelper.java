@@ -15,9 +15,11 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
@@ -28,12 +30,41 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    static final int DATABASE_VERSION = 4;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Serves every per-location forecast query (the forecast list, both widgets, Muzei, the
+    // notification and the wear face) straight from the index: the location and date narrow it
+    // down and keep it in date order, and the remaining columns are the ones those screens show.
+    // _ID comes along for free as the rowid.
+    static final String WEATHER_LOCATION_DATE_INDEX = "weather_location_date_idx";
+    static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX = "CREATE INDEX " +
+            WEATHER_LOCATION_DATE_INDEX + " ON " + WeatherEntry.TABLE_NAME + " (" +
+            WeatherEntry.COLUMN_LOC_KEY + ", " +
+            WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_WEATHER_ID + ", " +
+            WeatherEntry.COLUMN_SHORT_DESC + ", " +
+            WeatherEntry.COLUMN_MAX_TEMP + ", " +
+            WeatherEntry.COLUMN_MIN_TEMP + ");";
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // With write-ahead logging, reads run on their own connections and see the last
+        // committed data while a sync is still writing, instead of waiting for it to finish.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    @Override
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            db.enableWriteAheadLogging();
+        }
     }
 
     @Override
@@ -45,7 +76,10 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
                 LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
                 LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_ETAG + " TEXT, " +
+                LocationEntry.COLUMN_LAST_MODIFIED + " TEXT, " +
+                LocationEntry.COLUMN_FRESH_UNTIL + " INTEGER NOT NULL DEFAULT 0 " +
                 " );";
 
         final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
@@ -81,18 +115,54 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
     }
 
+    // Databases older than this predate the current tables and are rebuilt from scratch.
+    static final int OLDEST_MIGRATABLE_VERSION = 2;
+
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        if (oldVersion < OLDEST_MIGRATABLE_VERSION) {
+            // This database is only a cache for online data, so anything we don't know how to
+            // migrate is simply discarded and fetched again.
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+
+        // Otherwise step through every version in between, keeping the cached forecast, so an
+        // app update doesn't send every device back to the server at once.  SQLiteOpenHelper
+        // runs all of this in one transaction.
+        for (int version = oldVersion; version < newVersion; version++) {
+            upgradeFrom(sqLiteDatabase, version);
+        }
+    }
+
+    /*
+        Upgrades the schema from the given version to the next one.  Every change to onCreate
+        needs a step here that makes the same change to an existing database.
+     */
+    private static void upgradeFrom(SQLiteDatabase sqLiteDatabase, int version) {
+        switch (version) {
+            case 2:
+                // Validators for conditional forecast requests
+                sqLiteDatabase.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME +
+                        " ADD COLUMN " + LocationEntry.COLUMN_ETAG + " TEXT");
+                sqLiteDatabase.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME +
+                        " ADD COLUMN " + LocationEntry.COLUMN_LAST_MODIFIED + " TEXT");
+                sqLiteDatabase.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME +
+                        " ADD COLUMN " + LocationEntry.COLUMN_FRESH_UNTIL +
+                        " INTEGER NOT NULL DEFAULT 0");
+                break;
+            case 3:
+                sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+                break;
+            default:
+                throw new IllegalStateException("No upgrade from database version " + version);
+        }
     }
 }
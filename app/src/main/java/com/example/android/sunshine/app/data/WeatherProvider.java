@@ -17,18 +17,39 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
+import android.text.format.Time;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private NotificationCoalescer mNotificationCoalescer;
+    private final QueryCache mQueryCache = new QueryCache(QUERY_CACHE_SIZE);
+
+    // A few locations' worth of the list, detail and today queries the app makes.
+    private static final int QUERY_CACHE_SIZE = 32;
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
@@ -73,24 +94,14 @@ public class WeatherProvider extends ContentProvider {
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
 
         String[] selectionArgs;
-        String selection;
-
         if (startDate == 0) {
-            selection = sLocationSettingSelection;
             selectionArgs = new String[]{locationSetting};
         } else {
             selectionArgs = new String[]{locationSetting, Long.toString(startDate)};
-            selection = sLocationSettingWithStartDateSelection;
         }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
-                projection,
-                selection,
-                selectionArgs,
-                null,
-                null,
-                sortOrder
-        );
+        return mOpenHelper.getReadableDatabase().rawQuery(
+                buildQuerySql(uri, projection, null, sortOrder), selectionArgs);
     }
 
     private Cursor getWeatherByLocationSettingAndDate(
@@ -98,14 +109,43 @@ public class WeatherProvider extends ContentProvider {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
-                projection,
-                sLocationSettingAndDaySelection,
-                new String[]{locationSetting, Long.toString(date)},
-                null,
-                null,
-                sortOrder
-        );
+        return mOpenHelper.getReadableDatabase().rawQuery(
+                buildQuerySql(uri, projection, null, sortOrder),
+                new String[]{locationSetting, Long.toString(date)});
+    }
+
+    /*
+        The SQL that query() runs for the given URI, with ? left in place of the selection
+        arguments.  Every query goes through here, so the query plan tests that EXPLAIN it check
+        exactly what the provider runs.
+     */
+    @SuppressWarnings("deprecation")
+    static String buildQuerySql(Uri uri, String[] projection, String selection, String sortOrder) {
+        switch (sUriMatcher.match(uri)) {
+            // "weather/*/*"
+            case WEATHER_WITH_LOCATION_AND_DATE:
+                return sWeatherByLocationSettingQueryBuilder.buildQuery(projection,
+                        sLocationSettingAndDaySelection, null, null, null, sortOrder, null);
+            // "weather/*"
+            case WEATHER_WITH_LOCATION:
+                return sWeatherByLocationSettingQueryBuilder.buildQuery(projection,
+                        WeatherContract.WeatherEntry.getStartDateFromUri(uri) == 0
+                                ? sLocationSettingSelection
+                                : sLocationSettingWithStartDateSelection,
+                        null, null, null, sortOrder, null);
+            // "weather"
+            case WEATHER:
+                return SQLiteQueryBuilder.buildQueryString(false,
+                        WeatherContract.WeatherEntry.TABLE_NAME, projection, selection,
+                        null, null, sortOrder, null);
+            // "location"
+            case LOCATION:
+                return SQLiteQueryBuilder.buildQueryString(false,
+                        WeatherContract.LocationEntry.TABLE_NAME, projection, selection,
+                        null, null, sortOrder, null);
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
     }
 
     /*
@@ -140,6 +180,8 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         mOpenHelper = new WeatherDbHelper(getContext());
+        mNotificationCoalescer = new NotificationCoalescer(getContext().getContentResolver(),
+                NotificationCoalescer.DEFAULT_WINDOW_MILLIS);
         return true;
     }
 
@@ -174,8 +216,23 @@ public class WeatherProvider extends ContentProvider {
                         String sortOrder) {
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
+        final int match = sUriMatcher.match(uri);
+        String cacheKey = null;
+        long cacheGeneration = 0;
+        if (QueryCache.isSupported()
+                && (match == WEATHER_WITH_LOCATION || match == WEATHER_WITH_LOCATION_AND_DATE)) {
+            // These ignore selection, so the URI, projection and order say everything.
+            cacheKey = QueryCache.buildKey(match, uri, projection, sortOrder);
+            cacheGeneration = mQueryCache.getGeneration();
+            Cursor cached = mQueryCache.get(cacheKey);
+            if (cached != null) {
+                cached.setNotificationUri(getContext().getContentResolver(), uri);
+                return cached;
+            }
+        }
+
         Cursor retCursor;
-        switch (sUriMatcher.match(uri)) {
+        switch (match) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
             {
@@ -188,35 +245,20 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
             // "weather"
-            case WEATHER: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
-                        WeatherContract.WeatherEntry.TABLE_NAME,
-                        projection,
-                        selection,
-                        selectionArgs,
-                        null,
-                        null,
-                        sortOrder
-                );
-                break;
-            }
+            case WEATHER:
             // "location"
             case LOCATION: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
-                        WeatherContract.LocationEntry.TABLE_NAME,
-                        projection,
-                        selection,
-                        selectionArgs,
-                        null,
-                        null,
-                        sortOrder
-                );
+                retCursor = mOpenHelper.getReadableDatabase().rawQuery(
+                        buildQuerySql(uri, projection, selection, sortOrder), selectionArgs);
                 break;
             }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
+        if (cacheKey != null) {
+            retCursor = mQueryCache.put(cacheKey, cacheGeneration, retCursor);
+        }
         retCursor.setNotificationUri(getContext().getContentResolver(), uri);
         return retCursor;
     }
@@ -232,6 +274,18 @@ public class WeatherProvider extends ContentProvider {
 
         switch (match) {
             case WEATHER: {
+                Batch batch = mBatch.get();
+                if (batch != null) {
+                    // Notifies through the batch when it finishes.
+                    if (batch.weatherUpsert == null) {
+                        batch.weatherUpsert = new WeatherUpsert(db);
+                    }
+                    long _id = batch.weatherUpsert.upsert(values);
+                    if ( _id > 0 )
+                        return WeatherContract.WeatherEntry.buildWeatherUri(_id);
+                    else
+                        throw new android.database.SQLException("Failed to insert row into " + uri);
+                }
                 normalizeDate(values);
                 long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
                 if ( _id > 0 )
@@ -251,7 +305,7 @@ public class WeatherProvider extends ContentProvider {
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return returnUri;
     }
 
@@ -276,7 +330,7 @@ public class WeatherProvider extends ContentProvider {
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsDeleted;
     }
@@ -305,12 +359,22 @@ public class WeatherProvider extends ContentProvider {
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                if (values.size() == 1
+                        && values.containsKey(WeatherContract.LocationEntry.COLUMN_FRESH_UNTIL)) {
+                    // Only the sync acts on when to next ask for a location's forecast, so there
+                    // is nobody to tell.  Weather queries without a projection return it too,
+                    // though, so their cached results are stale.
+                    if (rowsUpdated != 0) {
+                        invalidateCache();
+                    }
+                    return rowsUpdated;
+                }
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsUpdated;
     }
@@ -321,27 +385,434 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
-                db.beginTransaction();
-                int returnCount = 0;
-                try {
-                    for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
-                        }
-                    }
-                    db.setTransactionSuccessful();
-                } finally {
-                    db.endTransaction();
-                }
-                getContext().getContentResolver().notifyChange(uri, null);
-                return returnCount;
+                Set<Uri> changedUris = new LinkedHashSet<Uri>();
+                int writeCount = upsertWeather(db, values, changedUris);
+                announce(changedUris);
+                return writeCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /*
+        Upserts the weather in a transaction of its own and adds the URIs that need notifying to
+        changedUris, without announcing them.  Returns how many rows were written.
+     */
+    int upsertWeather(SQLiteDatabase db, ContentValues[] values, Set<Uri> changedUris) {
+        WeatherUpsert upsert = new WeatherUpsert(db);
+        beginTransaction(db);
+        try {
+            for (ContentValues value : values) {
+                upsert.upsert(value);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            upsert.finish(changedUris);
+            db.endTransaction();
+        }
+        return upsert.getWriteCount();
+    }
+
+    /*
+        The batch being applied on the calling thread, if any.  While a batch is open, changes
+        are collected here instead of being announced one at a time.
+     */
+    private final ThreadLocal<Batch> mBatch = new ThreadLocal<Batch>();
+
+    private static class Batch {
+        final Set<Uri> changedUris = new LinkedHashSet<Uri>();
+        // Whether something changed that cached results show but nobody needs to be told about
+        boolean cacheStale;
+        WeatherUpsert weatherUpsert;
+    }
+
+    /*
+        Applies all of the operations in one transaction, and announces everything they changed
+        once it commits, each URI once.  Weather inserts in a batch behave like
+        bulkInsert: a day that is already stored is updated in place if it changed and left
+        alone if it didn't, and the insert's result is that day's row either way.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        Batch batch = new Batch();
+        ContentProviderResult[] results;
+        mBatch.set(batch);
+        beginTransaction(db);
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            if (batch.weatherUpsert != null) {
+                batch.weatherUpsert.finish(batch.changedUris);
+            }
+            db.endTransaction();
+            mBatch.remove();
+        }
+        announce(batch.changedUris);
+        if (batch.cacheStale && batch.changedUris.isEmpty()) {
+            mQueryCache.invalidate();
+        }
+        return results;
+    }
+
+    /*
+        Announces a change with the next round of notifications, or once the current batch
+        commits if there is one.
+     */
+    private void notifyChange(Uri uri) {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.changedUris.add(uri);
+        } else {
+            announce(Collections.singleton(uri));
+        }
+    }
+
+    /*
+        Drops the cached results without notifying anyone, or once the current batch commits if
+        there is one.
+     */
+    private void invalidateCache() {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.cacheStale = true;
+        } else {
+            mQueryCache.invalidate();
+        }
+    }
+
+    /*
+        Called once changes have committed: drops the cached results they may have made stale,
+        then schedules their notifications.
+     */
+    private void announce(Collection<Uri> changedUris) {
+        if (changedUris.isEmpty()) return;
+        mQueryCache.invalidate();
+        mNotificationCoalescer.addAll(changedUris);
+    }
+
+    NotificationCoalescer getNotificationCoalescer() {
+        return mNotificationCoalescer;
+    }
+
+    QueryCache getQueryCache() {
+        return mQueryCache;
+    }
+
+    /*
+        With write-ahead logging an immediate (rather than exclusive) transaction is all a
+        writer needs, and it lets readers carry on against the last committed data meanwhile.
+     */
+    @TargetApi(11)
+    private static void beginTransaction(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            db.beginTransactionNonExclusive();
+        } else {
+            db.beginTransaction();
+        }
+    }
+
+    // The columns a sync can change for a given location and day, in the order they are bound
+    // in sInsertWeatherSql (after location_id and date) and sUpdateWeatherSql.
+    private static final String[] WEATHER_DATA_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+    private static final int DATA_COLUMN_SHORT_DESC = 0;
+    private static final int DATA_COLUMN_WEATHER_ID = 1;
+
+    //INSERT INTO weather (location_id, date, short_desc, ...) VALUES (?, ?, ?, ...)
+    private static final String sInsertWeatherSql;
+
+    //UPDATE weather SET short_desc = ?, ... WHERE _id = ?
+    private static final String sUpdateWeatherSql;
+
+    static {
+        StringBuilder sql = new StringBuilder("INSERT INTO ")
+                .append(WeatherContract.WeatherEntry.TABLE_NAME).append(" (")
+                .append(WeatherContract.WeatherEntry.COLUMN_LOC_KEY).append(", ")
+                .append(WeatherContract.WeatherEntry.COLUMN_DATE);
+        for (String column : WEATHER_DATA_COLUMNS) {
+            sql.append(", ").append(column);
+        }
+        sql.append(") VALUES (?, ?");
+        for (int i = 0; i < WEATHER_DATA_COLUMNS.length; i++) {
+            sql.append(", ?");
+        }
+        sInsertWeatherSql = sql.append(")").toString();
+
+        sql = new StringBuilder("UPDATE ")
+                .append(WeatherContract.WeatherEntry.TABLE_NAME).append(" SET ");
+        for (int i = 0; i < WEATHER_DATA_COLUMNS.length; i++) {
+            if (i > 0) sql.append(", ");
+            sql.append(WEATHER_DATA_COLUMNS[i]).append(" = ?");
+        }
+        sql.append(" WHERE ").append(WeatherContract.WeatherEntry._ID).append(" = ?");
+        sUpdateWeatherSql = sql.toString();
+    }
+
+    //weather.location_id = ?
+    private static final String sLocationIdSelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? ";
+
+    /*
+        Writes only the days that are new or different from what is stored.  Existing days are
+        updated in place, so their _IDs (and the list positions built on them) stay put, and a
+        sync that brings nothing new writes nothing at all.  finish() adds the URIs that need
+        notifying: a single changed day gets its own URI, several changed days of one location
+        get that location's URI.
+
+        Complete rows, which is every row a sync produces, are written through statements
+        compiled once per upsert with their values bound directly; anything else goes through
+        the generic insert and update.  Like insert, this normalizes the date in each of the
+        given values.
+
+        Must be used inside a transaction, and finished before it ends.
+     */
+    private class WeatherUpsert {
+        private final SQLiteDatabase mDb;
+        private final Map<Long, Map<Long, Object[]>> mExistingByLocation =
+                new HashMap<Long, Map<Long, Object[]>>();
+        private final Map<Long, List<Long>> mChangedDatesByLocation =
+                new LinkedHashMap<Long, List<Long>>();
+        private final Time mTime = new Time();
+        private SQLiteStatement mInsert;
+        private SQLiteStatement mUpdate;
+        private boolean mOtherRowsChanged;
+        private int mWriteCount;
+
+        WeatherUpsert(SQLiteDatabase db) {
+            mDb = db;
+        }
+
+        /*
+            Returns the _ID of the row for this day, whether or not it had to be written, or -1
+            if it couldn't be.
+         */
+        long upsert(ContentValues value) {
+            Long locationId = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+            Long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            if (date != null) {
+                long normalizedDate = WeatherContract.normalizeDate(date, mTime);
+                if (normalizedDate != date) {
+                    date = normalizedDate;
+                    value.put(WeatherContract.WeatherEntry.COLUMN_DATE, date);
+                }
+            }
+            if (locationId == null || date == null) {
+                // Let the database's constraints decide what to make of it.
+                long _id = mDb.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                if (_id != -1) {
+                    mWriteCount++;
+                    mOtherRowsChanged = true;
+                }
+                return _id;
+            }
+
+            Map<Long, Object[]> existing = mExistingByLocation.get(locationId);
+            if (existing == null) {
+                existing = queryWeatherData(mDb, locationId);
+                mExistingByLocation.put(locationId, existing);
+            }
+
+            long _id;
+            Object[] row = existing.get(date);
+            if (row == null) {
+                if (hasAllWeatherData(value)) {
+                    if (mInsert == null) {
+                        mInsert = mDb.compileStatement(sInsertWeatherSql);
+                    }
+                    mInsert.bindLong(1, locationId);
+                    mInsert.bindLong(2, date);
+                    bindWeatherData(mInsert, 3, value);
+                    _id = mInsert.executeInsert();
+                } else {
+                    _id = mDb.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                }
+                if (_id == -1) return -1;
+                // So a second value for this day in the same batch updates this row instead of
+                // replacing it with a new _ID.
+                row = new Object[WEATHER_DATA_COLUMNS.length + 1];
+                row[row.length - 1] = _id;
+                existing.put(date, row);
+                copyWeatherData(value, row);
+            } else {
+                _id = (Long) row[row.length - 1];
+                if (isWeatherDataUnchanged(row, value)) {
+                    return _id;
+                } else if (hasAllWeatherData(value)) {
+                    if (mUpdate == null) {
+                        mUpdate = mDb.compileStatement(sUpdateWeatherSql);
+                    }
+                    bindWeatherData(mUpdate, 1, value);
+                    mUpdate.bindLong(WEATHER_DATA_COLUMNS.length + 1, _id);
+                    mUpdate.execute();
+                } else {
+                    mDb.update(WeatherContract.WeatherEntry.TABLE_NAME, value,
+                            WeatherContract.WeatherEntry._ID + " = ?",
+                            new String[]{Long.toString(_id)});
+                }
+                copyWeatherData(value, row);
+            }
+
+            mWriteCount++;
+            List<Long> changedDates = mChangedDatesByLocation.get(locationId);
+            if (changedDates == null) {
+                changedDates = new ArrayList<Long>();
+                mChangedDatesByLocation.put(locationId, changedDates);
+            }
+            changedDates.add(date);
+            return _id;
+        }
+
+        /*
+            The number of rows inserted or updated.
+         */
+        int getWriteCount() {
+            return mWriteCount;
+        }
+
+        void finish(Set<Uri> changedUris) {
+            if (mInsert != null) {
+                mInsert.close();
+            }
+            if (mUpdate != null) {
+                mUpdate.close();
+            }
+            if (mOtherRowsChanged) {
+                changedUris.add(WeatherContract.WeatherEntry.CONTENT_URI);
+            }
+            for (Map.Entry<Long, List<Long>> entry : mChangedDatesByLocation.entrySet()) {
+                String locationSetting = queryLocationSetting(mDb, entry.getKey());
+                List<Long> changedDates = entry.getValue();
+                if (locationSetting == null) {
+                    changedUris.add(WeatherContract.WeatherEntry.CONTENT_URI);
+                } else if (changedDates.size() == 1) {
+                    changedUris.add(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                            locationSetting, changedDates.get(0)));
+                } else {
+                    changedUris.add(WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting));
+                }
+            }
+        }
+    }
+
+    /*
+        The stored weather for one location, keyed by date.  Each row holds the values of
+        WEATHER_DATA_COLUMNS followed by the row's _ID.
+     */
+    private Map<Long, Object[]> queryWeatherData(SQLiteDatabase db, long locationId) {
+        String[] projection = new String[WEATHER_DATA_COLUMNS.length + 2];
+        System.arraycopy(WEATHER_DATA_COLUMNS, 0, projection, 0, WEATHER_DATA_COLUMNS.length);
+        int dateIndex = WEATHER_DATA_COLUMNS.length;
+        int idIndex = dateIndex + 1;
+        projection[dateIndex] = WeatherContract.WeatherEntry.COLUMN_DATE;
+        projection[idIndex] = WeatherContract.WeatherEntry._ID;
+
+        Map<Long, Object[]> rows = new HashMap<Long, Object[]>();
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME, projection,
+                sLocationIdSelection, new String[]{Long.toString(locationId)}, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                Object[] row = new Object[WEATHER_DATA_COLUMNS.length + 1];
+                for (int i = 0; i < WEATHER_DATA_COLUMNS.length; i++) {
+                    if (i == DATA_COLUMN_SHORT_DESC) {
+                        row[i] = cursor.getString(i);
+                    } else if (i == DATA_COLUMN_WEATHER_ID) {
+                        row[i] = cursor.getLong(i);
+                    } else {
+                        row[i] = cursor.getDouble(i);
+                    }
+                }
+                row[row.length - 1] = cursor.getLong(idIndex);
+                rows.put(cursor.getLong(dateIndex), row);
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+
+    private static boolean isWeatherDataUnchanged(Object[] row, ContentValues value) {
+        for (int i = 0; i < WEATHER_DATA_COLUMNS.length; i++) {
+            String column = WEATHER_DATA_COLUMNS[i];
+            if (!value.containsKey(column)) continue;
+            Object incoming;
+            if (i == DATA_COLUMN_SHORT_DESC) {
+                incoming = value.getAsString(column);
+            } else if (i == DATA_COLUMN_WEATHER_ID) {
+                incoming = value.getAsLong(column);
+            } else {
+                incoming = value.getAsDouble(column);
+            }
+            if (incoming == null ? row[i] != null : !incoming.equals(row[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+        Brings a row from queryWeatherData up to date with the columns written from value.
+     */
+    private static void copyWeatherData(ContentValues value, Object[] row) {
+        for (int i = 0; i < WEATHER_DATA_COLUMNS.length; i++) {
+            String column = WEATHER_DATA_COLUMNS[i];
+            if (!value.containsKey(column)) continue;
+            if (i == DATA_COLUMN_SHORT_DESC) {
+                row[i] = value.getAsString(column);
+            } else if (i == DATA_COLUMN_WEATHER_ID) {
+                row[i] = value.getAsLong(column);
+            } else {
+                row[i] = value.getAsDouble(column);
+            }
+        }
+    }
+
+    private static boolean hasAllWeatherData(ContentValues value) {
+        for (String column : WEATHER_DATA_COLUMNS) {
+            if (value.get(column) == null) return false;
+        }
+        return true;
+    }
+
+    /*
+        Binds WEATHER_DATA_COLUMNS from value, starting at the given (1-based) parameter index.
+     */
+    private static void bindWeatherData(SQLiteStatement statement, int firstIndex,
+                                        ContentValues value) {
+        for (int i = 0; i < WEATHER_DATA_COLUMNS.length; i++) {
+            String column = WEATHER_DATA_COLUMNS[i];
+            if (i == DATA_COLUMN_SHORT_DESC) {
+                statement.bindString(firstIndex + i, value.getAsString(column));
+            } else if (i == DATA_COLUMN_WEATHER_ID) {
+                statement.bindLong(firstIndex + i, value.getAsLong(column));
+            } else {
+                statement.bindDouble(firstIndex + i, value.getAsDouble(column));
+            }
+        }
+    }
+
+    private static String queryLocationSetting(SQLiteDatabase db, long locationId) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
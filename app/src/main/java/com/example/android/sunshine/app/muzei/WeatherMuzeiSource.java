@@ -16,13 +16,12 @@
 package com.example.android.sunshine.app.muzei;
 
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.Utility;
-import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.TodaySnapshot;
 import com.google.android.apps.muzei.api.Artwork;
 import com.google.android.apps.muzei.api.MuzeiArtSource;
 
@@ -30,13 +29,8 @@ import com.google.android.apps.muzei.api.MuzeiArtSource;
  * Muzei source that changes your background based on the current weather conditions
  */
 public class WeatherMuzeiSource extends MuzeiArtSource {
-    private static final String[] FORECAST_COLUMNS = new String[]{
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
+    // Today's weather as the sync that woke us saw it, if that's why we're updating.
+    private TodaySnapshot mSyncedToday;
 
     public WeatherMuzeiSource() {
         super("WeatherMuzeiSource");
@@ -48,32 +42,28 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
         boolean dataUpdated = intent != null &&
                 SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction());
         if (dataUpdated && isEnabled()) {
-            onUpdate(UPDATE_REASON_OTHER);
+            mSyncedToday = intent.getParcelableExtra(TodaySnapshot.EXTRA_TODAY);
+            try {
+                onUpdate(UPDATE_REASON_OTHER);
+            } finally {
+                mSyncedToday = null;
+            }
         }
     }
 
     @Override
     protected void onUpdate(int reason) {
         String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            String desc = cursor.getString(INDEX_SHORT_DESC);
-
-            String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
-            // Only publish a new wallpaper if we have a valid image
-            if (imageUrl != null) {
-                publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
-                        .title(desc)
-                        .byline(location)
-                        .viewIntent(new Intent(this, MainActivity.class))
-                        .build());
-            }
+        TodaySnapshot today = mSyncedToday != null && mSyncedToday.locationSetting.equals(location)
+                ? mSyncedToday : TodaySnapshot.query(this);
+        // Only publish a new wallpaper if we have a valid image
+        if (today != null && today.imageUrl != null) {
+            publishArtwork(new Artwork.Builder()
+                    .imageUri(Uri.parse(today.imageUrl))
+                    .title(today.description)
+                    .byline(location)
+                    .viewIntent(new Intent(this, MainActivity.class))
+                    .build());
         }
-        cursor.close();
     }
 }
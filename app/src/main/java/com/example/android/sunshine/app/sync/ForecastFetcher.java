@@ -0,0 +1,325 @@
+package com.example.android.sunshine.app.sync;
+
+import android.net.Uri;
+import android.text.format.Time;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads and parses OpenWeatherMap daily forecasts for one or more location settings.
+ *
+ * OWM's "group" endpoint only serves current conditions (and only by numeric city id), so there
+ * is no way to ask for several daily forecasts in one request.  Instead, several locations are
+ * fetched side by side on a small, bounded pool so a sync of many locations isn't the sum of
+ * their round trips.
+ */
+public class ForecastFetcher {
+    private static final String LOG_TAG = ForecastFetcher.class.getSimpleName();
+
+    // Construct the URL for the OpenWeatherMap query
+    // Possible parameters are avaiable at OWM's forecast API page, at
+    // http://openweathermap.org/API#forecast
+    public static final String FORECAST_BASE_URL =
+            "http://api.openweathermap.org/data/2.5/forecast/daily?";
+    private static final String QUERY_PARAM = "q";
+    private static final String FORMAT_PARAM = "mode";
+    private static final String UNITS_PARAM = "units";
+    private static final String DAYS_PARAM = "cnt";
+    private static final String APPID_PARAM = "APPID";
+
+    private static final String FORMAT = "json";
+    private static final String UNITS = "metric";
+    private static final int NUM_DAYS = 14;
+
+    // Enough to overlap the round trips without hammering OWM (or the radio) from one device.
+    public static final int MAX_PARALLEL_FETCHES = 4;
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+
+    /**
+     * A location to fetch, along with the validators saved from its last response (if any).
+     */
+    public static class Request {
+        public final String locationSetting;
+        public String etag;
+        public String lastModified;
+        public long freshUntil;
+
+        public Request(String locationSetting) {
+            this.locationSetting = locationSetting;
+        }
+    }
+
+    /**
+     * The outcome of fetching one location.  {@link #forecast} is only set when
+     * {@link #status} is {@link SunshineSyncAdapter#LOCATION_STATUS_OK} and the server sent a
+     * new forecast; when {@link #notModified} is true the forecast we already have is current,
+     * either because the server said so (304) or because it was still fresh and no request was
+     * made.
+     */
+    public static class Result {
+        public final String locationSetting;
+        @SunshineSyncAdapter.LocationStatus
+        public int status = SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN;
+        public ForecastJsonParser.Forecast forecast;
+        public boolean notModified;
+
+        // Validators to save for the next sync, if validatorsChanged
+        public String etag;
+        public String lastModified;
+        public long freshUntil;
+        public boolean validatorsChanged;
+        // Whether only freshUntil needs saving, as after a 304 that repeated the validators
+        public boolean freshnessChanged;
+
+        Result(Request request) {
+            this.locationSetting = request.locationSetting;
+            this.etag = request.etag;
+            this.lastModified = request.lastModified;
+        }
+    }
+
+    private final ForecastHttpClient mHttpClient;
+    private final String mBaseUrl;
+    private final String mApiKey;
+    private final int mMaxParallelFetches;
+    private final int mJulianStartDay;
+
+    public ForecastFetcher(String baseUrl, String apiKey, int maxParallelFetches,
+                           int julianStartDay) {
+        this(new ForecastHttpClient(), baseUrl, apiKey, maxParallelFetches, julianStartDay);
+    }
+
+    /**
+     * @param httpClient         shared across syncs so its connections and counters are too
+     * @param baseUrl            the forecast endpoint, normally {@link #FORECAST_BASE_URL}
+     * @param apiKey             the OWM APPID
+     * @param maxParallelFetches upper bound on concurrent requests; 1 fetches sequentially
+     * @param julianStartDay     see {@link ForecastJsonParser#getJulianStartDay()}
+     */
+    public ForecastFetcher(ForecastHttpClient httpClient, String baseUrl, String apiKey,
+                           int maxParallelFetches, int julianStartDay) {
+        mHttpClient = httpClient;
+        mBaseUrl = baseUrl;
+        mApiKey = apiKey;
+        mMaxParallelFetches = Math.max(1, maxParallelFetches);
+        mJulianStartDay = julianStartDay;
+    }
+
+    /**
+     * Fetches every location, at most {@code maxParallelFetches} at a time.  Results are
+     * returned in the same order as the locations were given.
+     */
+    public List<Result> fetchAll(List<Request> requests) {
+        List<Result> results = new ArrayList<Result>(requests.size());
+        int poolSize = Math.min(mMaxParallelFetches, requests.size());
+        if (poolSize <= 1) {
+            for (Request request : requests) {
+                results.add(fetch(request));
+            }
+            return results;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize);
+        try {
+            List<Future<Result>> futures = new ArrayList<Future<Result>>(requests.size());
+            for (final Request request : requests) {
+                futures.add(pool.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        return fetch(request);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (InterruptedException | ExecutionException e) {
+                    Log.e(LOG_TAG, "Error fetching " + requests.get(i).locationSetting, e);
+                    Result result = new Result(requests.get(i));
+                    result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+                    results.add(result);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Fetches and parses the forecast for a single location on the calling thread.  If the
+     * request carries validators the fetch is conditional, and if the last response is still
+     * fresh no request is made at all.
+     */
+    public Result fetch(Request request) {
+        Result result = new Result(request);
+
+        long now = System.currentTimeMillis();
+        if (request.freshUntil > now) {
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+            result.notModified = true;
+            result.freshUntil = request.freshUntil;
+            return result;
+        }
+
+        ForecastHttpClient.Response response = null;
+
+        try {
+            // Create the request to OpenWeatherMap, and open the connection
+            response = mHttpClient.get(buildForecastUri(request.locationSetting),
+                    request.etag, request.lastModified);
+
+            result.freshUntil = computeFreshUntil(response.getHeaderField(HEADER_CACHE_CONTROL), now);
+            if (response.getCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // What we have is still current: nothing to download, parse or store.
+                result.status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+                result.notModified = true;
+                // A 304 may carry new validators, but normally repeats the ones we sent.
+                String etag = response.getHeaderField(HEADER_ETAG);
+                if (etag != null && !etag.equals(result.etag)) {
+                    result.etag = etag;
+                    result.validatorsChanged = true;
+                }
+                String lastModified = response.getHeaderField(HEADER_LAST_MODIFIED);
+                if (lastModified != null && !lastModified.equals(result.lastModified)) {
+                    result.lastModified = lastModified;
+                    result.validatorsChanged = true;
+                }
+                result.freshnessChanged = !result.validatorsChanged && result.freshUntil > 0;
+                return result;
+            }
+
+            InputStream inputStream = response.getBody();
+            ForecastJsonParser parser = new ForecastJsonParser(mJulianStartDay);
+            ForecastJsonParser.Forecast forecast;
+            if (ForecastJsonParser.isStreamingSupported()) {
+                // Walk the response as it comes off the wire (and out of the inflater), without
+                // ever holding the whole body or a JSON object tree in memory.
+                forecast = parser.parse(inputStream);
+            } else {
+                // Read the input stream into a String
+                StringBuilder buffer = new StringBuilder();
+                BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
+                    // But it does make debugging a *lot* easier if you print out the completed
+                    // buffer for debugging.
+                    buffer.append(line).append('\n');
+                }
+
+                if (buffer.length() == 0) {
+                    // Stream was empty.  No point in parsing.
+                    result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+                    return result;
+                }
+                forecast = parser.parse(buffer.toString());
+            }
+
+            switch (forecast.code) {
+                case HttpURLConnection.HTTP_OK:
+                    result.forecast = forecast;
+                    result.status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+                    result.etag = response.getHeaderField(HEADER_ETAG);
+                    result.lastModified = response.getHeaderField(HEADER_LAST_MODIFIED);
+                    result.validatorsChanged = true;
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    result.status = SunshineSyncAdapter.LOCATION_STATUS_INVALID;
+                    break;
+                default:
+                    result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+            }
+        } catch (IOException e) {
+            result.freshUntil = 0;
+            Log.e(LOG_TAG, "Error ", e);
+            // If the code didn't successfully get the weather data, there's no point in attempting
+            // to parse it.
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+        } catch (JSONException e) {
+            result.freshUntil = 0;
+            Log.e(LOG_TAG, e.getMessage(), e);
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID;
+        } finally {
+            // Closing the response, not disconnecting, keeps the connection for the next fetch.
+            if (response != null) {
+                response.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Works out how long a response may be reused from its Cache-Control header.  Freshness never
+     * extends past the end of the current day, because the forecast's dates are assigned
+     * relative to the day it was parsed on.
+     *
+     * @return the time in milliseconds until which no request needs to be made, or 0
+     */
+    static long computeFreshUntil(String cacheControl, long now) {
+        long maxAgeSeconds = parseMaxAgeSeconds(cacheControl);
+        if (maxAgeSeconds <= 0) {
+            return 0;
+        }
+        Time endOfDay = new Time();
+        endOfDay.set(now);
+        endOfDay.hour = 23;
+        endOfDay.minute = 59;
+        endOfDay.second = 59;
+        return Math.min(now + maxAgeSeconds * 1000, endOfDay.toMillis(false));
+    }
+
+    /**
+     * @return the max-age directive of a Cache-Control header in seconds, 0 if the response
+     * must not be reused, or -1 if the header doesn't say.
+     */
+    static long parseMaxAgeSeconds(String cacheControl) {
+        if (cacheControl == null) {
+            return -1;
+        }
+        long maxAge = -1;
+        for (String directive : cacheControl.split(",")) {
+            directive = directive.trim().toLowerCase(Locale.US);
+            if (directive.equals("no-cache") || directive.equals("no-store")) {
+                return 0;
+            }
+            if (directive.startsWith("max-age=")) {
+                try {
+                    maxAge = Long.parseLong(directive.substring("max-age=".length()).trim());
+                } catch (NumberFormatException e) {
+                    Log.w(LOG_TAG, "Ignoring malformed " + HEADER_CACHE_CONTROL + ": " + cacheControl);
+                }
+            }
+        }
+        return maxAge;
+    }
+
+    Uri buildForecastUri(String locationSetting) {
+        return Uri.parse(mBaseUrl).buildUpon()
+                .appendQueryParameter(QUERY_PARAM, locationSetting)
+                .appendQueryParameter(FORMAT_PARAM, FORMAT)
+                .appendQueryParameter(UNITS_PARAM, UNITS)
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(NUM_DAYS))
+                .appendQueryParameter(APPID_PARAM, mApiKey)
+                .build();
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.android.sunshine.app.sync;
+
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The HTTP side of talking to OpenWeatherMap.
+ *
+ * Asks for gzip explicitly and inflates the body itself, rather than letting HttpURLConnection
+ * do it out of sight, so that it can count both the compressed bytes that came over the network
+ * and the bytes handed to the parser.  Responses are drained and closed rather than
+ * disconnected, which leaves the socket in HttpURLConnection's keep-alive pool for the next
+ * location in the same sync.
+ *
+ * One instance is meant to live as long as the sync adapter; it is safe to use from several
+ * fetch threads at once.
+ */
+public class ForecastHttpClient {
+    private static final String LOG_TAG = ForecastHttpClient.class.getSimpleName();
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String ENCODING_GZIP = "gzip";
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 30 * 1000;
+
+    // Whatever is left of a body after the parser is done with it is normally just the gzip
+    // trailer; anything bigger isn't worth reading only to keep the socket.
+    private static final int MAX_DRAIN_BYTES = 8 * 1024;
+
+    private final AtomicLong mBytesOnWire = new AtomicLong();
+    private final AtomicLong mBytesDecoded = new AtomicLong();
+    private final AtomicLong mRequestCount = new AtomicLong();
+
+    /**
+     * An open response.  Must be closed, which returns the connection to the pool when the body
+     * has been read (or can be read cheaply) to the end.
+     */
+    public class Response {
+        private final HttpURLConnection mConnection;
+        private final int mCode;
+        private InputStream mBody;
+
+        Response(HttpURLConnection connection) throws IOException {
+            mConnection = connection;
+            mCode = connection.getResponseCode();
+        }
+
+        public int getCode() {
+            return mCode;
+        }
+
+        public String getHeaderField(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        /**
+         * The decompressed response body.  The stream is owned by the response; don't close it.
+         */
+        public InputStream getBody() throws IOException {
+            if (mBody == null) {
+                InputStream in = new CountingInputStream(mConnection.getInputStream(), mBytesOnWire);
+                if (ENCODING_GZIP.equalsIgnoreCase(mConnection.getContentEncoding())) {
+                    in = new GZIPInputStream(in);
+                }
+                mBody = new CountingInputStream(in, mBytesDecoded);
+            }
+            return mBody;
+        }
+
+        public void close() {
+            try {
+                InputStream in = mBody;
+                if (in == null) {
+                    // Nothing was read (a 304, or an error).  The body, if any, still has to be
+                    // consumed before the socket can be reused.
+                    in = mCode >= HttpURLConnection.HTTP_BAD_REQUEST
+                            ? mConnection.getErrorStream() : mConnection.getInputStream();
+                }
+                if (in != null) {
+                    if (!drain(in)) {
+                        mConnection.disconnect();
+                    }
+                    in.close();
+                }
+            } catch (IOException e) {
+                Log.d(LOG_TAG, "Dropping connection", e);
+                mConnection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Makes a GET request and returns once the response headers are in.
+     *
+     * @param ifNoneMatch     the saved ETag to validate against, or null
+     * @param ifModifiedSince the saved Last-Modified date to validate against, or null
+     */
+    public Response get(Uri uri, String ifNoneMatch, String ifModifiedSince) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(uri.toString()).openConnection();
+        try {
+            connection.setRequestMethod("GET");
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            connection.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+            if (ifNoneMatch != null) {
+                connection.setRequestProperty("If-None-Match", ifNoneMatch);
+            }
+            if (ifModifiedSince != null) {
+                connection.setRequestProperty("If-Modified-Since", ifModifiedSince);
+            }
+            mRequestCount.incrementAndGet();
+            return new Response(connection);
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of body bytes received from the network, before decompression
+     */
+    public long getBytesOnWire() {
+        return mBytesOnWire.get();
+    }
+
+    /**
+     * @return the number of body bytes handed to the parser, after decompression
+     */
+    public long getBytesDecoded() {
+        return mBytesDecoded.get();
+    }
+
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    private static boolean drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[1024];
+        int total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+            if (total > MAX_DRAIN_BYTES) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong mCounter;
+
+        CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            mCounter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCounter.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mCounter.addAndGet(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long byteCount) throws IOException {
+            long skipped = super.skip(byteCount);
+            if (skipped > 0) {
+                mCounter.addAndGet(skipped);
+            }
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.os.Build;
+import android.text.format.Time;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns an OpenWeatherMap daily forecast response into the {@link ContentValues} rows that
+ * {@link SunshineSyncAdapter} writes to the weather table.
+ *
+ * There are two ways in: {@link #parse(InputStream)} walks the response with a pull-style
+ * {@link JsonReader} straight off the network stream, so neither the body nor a JSON object
+ * tree is ever held in memory.  {@link #parse(String)} is the original org.json path, kept for
+ * Gingerbread devices (JsonReader is API 11+) and as the reference the streaming path is
+ * benchmarked against.
+ */
+public class ForecastJsonParser {
+
+    // These are the names of the JSON objects that need to be extracted.
+
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    /**
+     * The parsed response.  The weather rows don't carry a location key yet, since the
+     * location row may not exist until the city information has been read.
+     */
+    public static class Forecast {
+        public int code = HttpURLConnection.HTTP_OK;
+        public String cityName;
+        public double cityLatitude;
+        public double cityLongitude;
+        public final List<ContentValues> days = new ArrayList<ContentValues>();
+
+        public boolean isOk() {
+            return code == HttpURLConnection.HTTP_OK;
+        }
+    }
+
+    private final int mJulianStartDay;
+    // now we work exclusively in UTC
+    private final Time mDayTime = new Time();
+
+    /**
+     * @param julianStartDay the local julian day of the first element of the forecast list,
+     *                       see {@link #getJulianStartDay()}
+     */
+    public ForecastJsonParser(int julianStartDay) {
+        mJulianStartDay = julianStartDay;
+    }
+
+    /**
+     * OWM returns daily forecasts based upon the local time of the city that is being
+     * asked for, which means that we need to know the GMT offset to translate this data
+     * properly.
+     *
+     * Since this data is also sent in-order and the first day is always the
+     * current day, we're going to take advantage of that to get a nice
+     * normalized UTC date for all of our weather.
+     */
+    public static int getJulianStartDay() {
+        Time dayTime = new Time();
+        dayTime.setToNow();
+
+        // we start at the day returned by local time. Otherwise this is a mess.
+        return Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+    }
+
+    /**
+     * Returns true if {@link #parse(InputStream)} can be used on this device.
+     */
+    public static boolean isStreamingSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    }
+
+    /**
+     * Streams the forecast out of the response body in a single pass.  The caller still owns
+     * (and closes) the stream.
+     *
+     * @throws IOException if the stream can't be read
+     * @throws JSONException if the body isn't a forecast we understand
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public Forecast parse(InputStream in) throws IOException, JSONException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        Forecast forecast = new Forecast();
+        boolean hasList = false;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_MESSAGE_CODE.equals(name)) {
+                    forecast.code = reader.nextInt();
+                    if (!forecast.isOk()) {
+                        // do we have an error?  Then there's nothing more we want from the body.
+                        return forecast;
+                    }
+                } else if (OWM_CITY.equals(name)) {
+                    readCity(reader, forecast);
+                } else if (OWM_LIST.equals(name)) {
+                    hasList = true;
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        forecast.days.add(readDay(reader, forecast.days.size()));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (MalformedJsonException e) {
+            throw newJSONException(e);
+        } catch (IllegalStateException e) {
+            // Thrown by JsonReader when a token isn't of the type we asked for
+            throw newJSONException(e);
+        } catch (NumberFormatException e) {
+            throw newJSONException(e);
+        }
+
+        if (forecast.cityName == null) {
+            throw new JSONException("No value for " + OWM_CITY);
+        }
+        if (!hasList) {
+            throw new JSONException("No value for " + OWM_LIST);
+        }
+        return forecast;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void readCity(JsonReader reader, Forecast forecast) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                forecast.cityName = reader.nextString();
+            } else if (OWM_COORD.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        forecast.cityLatitude = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        forecast.cityLongitude = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private ContentValues readDay(JsonReader reader, int dayIndex) throws IOException {
+        double pressure = 0;
+        int humidity = 0;
+        double windSpeed = 0;
+        double windDirection = 0;
+
+        double high = 0;
+        double low = 0;
+
+        String description = null;
+        int weatherId = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                pressure = reader.nextDouble();
+            } else if (OWM_HUMIDITY.equals(name)) {
+                humidity = reader.nextInt();
+            } else if (OWM_WINDSPEED.equals(name)) {
+                windSpeed = reader.nextDouble();
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                windDirection = reader.nextDouble();
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                // Temperatures are in a child object called "temp".  Try not to name variables
+                // "temp" when working with temperature.  It confuses everybody.
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String tempName = reader.nextName();
+                    if (OWM_MAX.equals(tempName)) {
+                        high = reader.nextDouble();
+                    } else if (OWM_MIN.equals(tempName)) {
+                        low = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                // Description is in a child array called "weather", which is 1 element long.
+                // That element also contains a weather code.
+                reader.beginArray();
+                boolean first = true;
+                while (reader.hasNext()) {
+                    if (!first || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    first = false;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String weatherName = reader.nextName();
+                        if (OWM_DESCRIPTION.equals(weatherName)) {
+                            description = reader.nextString();
+                        } else if (OWM_WEATHER_ID.equals(weatherName)) {
+                            weatherId = reader.nextInt();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (description == null) {
+            throw new IllegalStateException("No value for " + OWM_WEATHER);
+        }
+        return createWeatherValues(dayIndex, pressure, humidity, windSpeed, windDirection,
+                high, low, description, weatherId);
+    }
+
+    /**
+     * Take the String representing the complete forecast in JSON Format and
+     * pull out the data we need to construct the Strings needed for the wireframes.
+     *
+     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
+     * into an Object hierarchy for us.
+     */
+    public Forecast parse(String forecastJsonStr) throws JSONException {
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+        Forecast forecast = new Forecast();
+
+        // do we have an error?
+        if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
+            forecast.code = forecastJson.getInt(OWM_MESSAGE_CODE);
+            if (!forecast.isOk()) {
+                return forecast;
+            }
+        }
+
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        forecast.cityName = cityJson.getString(OWM_CITY_NAME);
+
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        forecast.cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
+        forecast.cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+
+        for(int i = 0; i < weatherArray.length(); i++) {
+            // Get the JSON object representing the day
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+
+            double pressure = dayForecast.getDouble(OWM_PRESSURE);
+            int humidity = dayForecast.getInt(OWM_HUMIDITY);
+            double windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
+            double windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+
+            // Description is in a child array called "weather", which is 1 element long.
+            // That element also contains a weather code.
+            JSONObject weatherObject =
+                    dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            String description = weatherObject.getString(OWM_DESCRIPTION);
+            int weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+
+            // Temperatures are in a child object called "temp".  Try not to name variables
+            // "temp" when working with temperature.  It confuses everybody.
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+            double high = temperatureObject.getDouble(OWM_MAX);
+            double low = temperatureObject.getDouble(OWM_MIN);
+
+            forecast.days.add(createWeatherValues(i, pressure, humidity, windSpeed,
+                    windDirection, high, low, description, weatherId));
+        }
+        return forecast;
+    }
+
+    private ContentValues createWeatherValues(int dayIndex, double pressure, int humidity,
+                                              double windSpeed, double windDirection,
+                                              double high, double low,
+                                              String description, int weatherId) {
+        // Cheating to convert this to UTC time, which is what we want anyhow
+        long dateTime = mDayTime.setJulianDay(mJulianStartDay + dayIndex);
+
+        ContentValues weatherValues = new ContentValues();
+
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+        return weatherValues;
+    }
+
+    private static JSONException newJSONException(Exception cause) {
+        JSONException e = new JSONException(cause.getMessage());
+        e.initCause(cause);
+        return e;
+    }
+}
@@ -2,26 +2,24 @@ package com.example.android.sunshine.app.sync;
 
 import android.accounts.Account;
 import android.accounts.AccountManager;
-import android.annotation.SuppressLint;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
 import android.content.res.Resources;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.RemoteException;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
@@ -29,7 +27,6 @@ import android.support.v4.app.TaskStackBuilder;
 import android.text.format.Time;
 import android.util.Log;
 
-import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
@@ -37,20 +34,12 @@ import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Vector;
-import java.util.concurrent.ExecutionException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
@@ -63,20 +52,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
-
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
-
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
     public @interface LocationStatus {}
@@ -87,6 +62,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
+    // Lives as long as the adapter so keep-alive connections and byte counts span syncs.
+    private final ForecastHttpClient mHttpClient = new ForecastHttpClient();
+
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
     }
@@ -94,290 +72,198 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
-        String locationQuery = Utility.getPreferredLocation(getContext());
-
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
+        // Downloads any missing art alongside the forecast, so the notification has it ready.
+        TodaySnapshot.prewarmArt(getContext());
+        String preferredLocation = Utility.getPreferredLocation(getContext());
+        List<ForecastFetcher.Request> requests = getLocationsToSync(preferredLocation);
+
+        int julianStartDay = ForecastJsonParser.getJulianStartDay();
+        ForecastFetcher fetcher = new ForecastFetcher(mHttpClient,
+                ForecastFetcher.FORECAST_BASE_URL, BuildConfig.OPEN_WEATHER_MAP_API_KEY,
+                ForecastFetcher.MAX_PARALLEL_FETCHES, julianStartDay);
+        storeForecasts(fetcher.fetchAll(requests), preferredLocation, julianStartDay);
+        Log.d(LOG_TAG, "Forecast bytes so far: " + mHttpClient.getBytesOnWire() + " on the wire, "
+                + mHttpClient.getBytesDecoded() + " decoded, in "
+                + mHttpClient.getRequestCount() + " requests");
+    }
 
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
+    private static final String[] SYNC_LOCATION_PROJECTION = new String[] {
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.LocationEntry.COLUMN_ETAG,
+            WeatherContract.LocationEntry.COLUMN_LAST_MODIFIED,
+            WeatherContract.LocationEntry.COLUMN_FRESH_UNTIL
+    };
 
-        String format = "json";
-        String units = "metric";
-        int numDays = 14;
+    // these indices must match the projection
+    private static final int INDEX_LOCATION_SETTING = 0;
+    private static final int INDEX_ETAG = 1;
+    private static final int INDEX_LAST_MODIFIED = 2;
+    private static final int INDEX_FRESH_UNTIL = 3;
 
-        try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
-            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
-                    .appendQueryParameter(QUERY_PARAM, locationQuery)
-                    .appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
-                    .build();
-
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
-            }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
-            }
+    /**
+     * Every location we have weather for, with the validators from its last response, plus
+     * the preferred location (first) in case this is the first time it is being synced.
+     */
+    private List<ForecastFetcher.Request> getLocationsToSync(String preferredLocation) {
+        Map<String, ForecastFetcher.Request> requests =
+                new LinkedHashMap<String, ForecastFetcher.Request>();
+        requests.put(preferredLocation, new ForecastFetcher.Request(preferredLocation));
 
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
-            }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error ", e);
-            // If the code didn't successfully get the weather data, there's no point in attempting
-            // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
+        Cursor locationCursor = getContext().getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                SYNC_LOCATION_PROJECTION,
+                null,
+                null,
+                null);
+        if (locationCursor != null) {
+            while (locationCursor.moveToNext()) {
+                String locationSetting = locationCursor.getString(INDEX_LOCATION_SETTING);
+                ForecastFetcher.Request request = new ForecastFetcher.Request(locationSetting);
+                request.etag = locationCursor.getString(INDEX_ETAG);
+                request.lastModified = locationCursor.getString(INDEX_LAST_MODIFIED);
+                request.freshUntil = locationCursor.getLong(INDEX_FRESH_UNTIL);
+                requests.put(locationSetting, request);
             }
+            locationCursor.close();
         }
-        return;
+        return new ArrayList<ForecastFetcher.Request>(requests.values());
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
-     *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * Writes the forecasts for every successfully fetched location, their validators and the
+     * removal of days gone by to the database in a single batch, and lets everything that
+     * displays the weather know about it if the preferred location changed, or if they were last
+     * updated for another location.
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
-
-        final String OWM_MESSAGE_CODE = "cod";
+    private void storeForecasts(List<ForecastFetcher.Result> results, String preferredLocation,
+                                int julianStartDay) {
+        @LocationStatus int preferredLocationStatus = LOCATION_STATUS_UNKNOWN;
+        boolean preferredLocationChanged = true;
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        int weatherRowCount = 0;
+        TodaySnapshot today = null;
+
+        for (ForecastFetcher.Result result : results) {
+            if (result.locationSetting.equals(preferredLocation)) {
+                preferredLocationStatus = result.status;
+            }
+            if (result.status != LOCATION_STATUS_OK) {
+                Log.d(LOG_TAG, "No forecast for " + result.locationSetting
+                        + ", status " + result.status);
+                continue;
+            }
 
-        try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
+            if (!result.notModified) {
+                ForecastJsonParser.Forecast forecast = result.forecast;
+                long locationId = queryLocationId(result.locationSetting);
+                int locationOperation = -1;
+                if (locationId == -1) {
+                    // A new location; its weather refers back to the row this inserts.
+                    locationOperation = operations.size();
+                    operations.add(ContentProviderOperation
+                            .newInsert(WeatherContract.LocationEntry.CONTENT_URI)
+                            .withValues(buildLocationValues(result.locationSetting,
+                                    forecast.cityName, forecast.cityLatitude, forecast.cityLongitude))
+                            .build());
                 }
+                for (ContentValues weatherValues : forecast.days) {
+                    ContentProviderOperation.Builder insert = ContentProviderOperation
+                            .newInsert(WeatherContract.WeatherEntry.CONTENT_URI)
+                            .withValues(weatherValues);
+                    if (locationOperation != -1) {
+                        insert.withValueBackReference(
+                                WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationOperation);
+                    } else {
+                        insert.withValue(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                    }
+                    operations.add(insert.build());
+                }
+                weatherRowCount += forecast.days.size();
+                if (result.locationSetting.equals(preferredLocation) && !forecast.days.isEmpty()) {
+                    // The forecast starts today.
+                    today = TodaySnapshot.fromForecastDay(getContext(), preferredLocation,
+                            forecast.days.get(0));
+                }
+            } else if (result.locationSetting.equals(preferredLocation)) {
+                // Nothing changed for the location on screen, so nobody needs to hear about it.
+                preferredLocationChanged = false;
             }
+            if (result.validatorsChanged) {
+                operations.add(buildSaveValidators(result));
+            } else if (result.freshnessChanged) {
+                operations.add(buildSaveFreshness(result));
+            }
+        }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
-
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-
+        if (weatherRowCount > 0) {
+            // delete old data so we don't build up an endless history
             Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
-
-                ContentValues weatherValues = new ContentValues();
-
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                cVVector.add(weatherValues);
-            }
+            operations.add(ContentProviderOperation
+                    .newDelete(WeatherContract.WeatherEntry.CONTENT_URI)
+                    .withSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                            new String[]{Long.toString(dayTime.setJulianDay(julianStartDay - 1))})
+                    .build());
+        }
 
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
-
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
-                WearableService.sendData(getContext());
+        // add to database, in one transaction with one change notification
+        boolean stored = operations.isEmpty();
+        if (!operations.isEmpty()) {
+            try {
+                getContext().getContentResolver().applyBatch(
+                        WeatherContract.CONTENT_AUTHORITY, operations);
+                stored = true;
+            } catch (RemoteException | OperationApplicationException e) {
+                Log.e(LOG_TAG, "Error storing forecasts", e);
+                // Nothing was saved, not even the validators, so there's nothing to call OK.
+                preferredLocationStatus = LOCATION_STATUS_UNKNOWN;
             }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+        }
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+        // A location that was already stored may have just become the preferred one, and come
+        // back unchanged, but everything on show is still the last location's weather.
+        if (stored && preferredLocationStatus == LOCATION_STATUS_OK && (preferredLocationChanged
+                || !preferredLocation.equals(getUpdatedLocation(getContext())))) {
+            if (today == null) {
+                today = TodaySnapshot.query(getContext());
+            }
+            updateWidgets(today);
+            if (today != null) {
+                today = today.withArt(getContext());
+                updateMuzei(today);
+                notifyWeather(today);
+            }
+            setUpdatedLocation(getContext(), preferredLocation);
         }
+        // Only puts the forecast if it isn't the one the watch already has.
+        WearableService.sendData(getContext());
+        Log.d(LOG_TAG, "Sync Complete. " + weatherRowCount + " days in " + operations.size()
+                + " operations for " + results.size() + " locations");
+        setLocationStatus(getContext(), preferredLocationStatus);
     }
 
-    private void updateWidgets() {
+    private void updateWidgets(TodaySnapshot today) {
         Context context = getContext();
         // Setting the package ensures that only components in our app will receive the broadcast
         Intent dataUpdatedIntent = new Intent(ACTION_DATA_UPDATED)
                 .setPackage(context.getPackageName());
+        if (today != null) {
+            dataUpdatedIntent.putExtra(TodaySnapshot.EXTRA_TODAY, today);
+        }
         context.sendBroadcast(dataUpdatedIntent);
     }
 
-    private void updateMuzei() {
+    private void updateMuzei(TodaySnapshot today) {
         // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to update the
         // Muzei background on lower API level devices
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
             Context context = getContext();
             context.startService(new Intent(ACTION_DATA_UPDATED)
-                    .setClass(context, WeatherMuzeiSource.class));
+                    .setClass(context, WeatherMuzeiSource.class)
+                    .putExtra(TodaySnapshot.EXTRA_TODAY, today));
         }
     }
 
-    private void notifyWeather() {
+    private void notifyWeather(TodaySnapshot today) {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
@@ -392,146 +278,116 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
             if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
-
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
-
-                    int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
-                    Resources resources = context.getResources();
-                    int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
-
-                    // On Honeycomb and higher devices, we can retrieve the size of the large icon
-                    // Prior to that, we use a fixed size
-                    @SuppressLint("InlinedApi")
-                    int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-                    @SuppressLint("InlinedApi")
-                    int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-
-                    // Retrieve the large icon
-                    Bitmap largeIcon;
-                    try {
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
-                        largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
-                    }
-                    String title = context.getString(R.string.app_name);
-
-                    // Define the text of the forecast.
-                    String contentText = String.format(context.getString(R.string.format_notification),
-                            desc,
-                            Utility.formatTemperature(context, high),
-                            Utility.formatTemperature(context, low));
-
-                    // NotificationCompatBuilder is a very convenient way to build backward-compatible
-                    // notifications.  Just throw in some data.
-                    NotificationCompat.Builder mBuilder =
-                            new NotificationCompat.Builder(getContext())
-                                    .setColor(resources.getColor(R.color.primary_light))
-                                    .setSmallIcon(iconId)
-                                    .setLargeIcon(largeIcon)
-                                    .setContentTitle(title)
-                                    .setContentText(contentText);
-
-                    // Make something interesting happen when the user clicks on the notification.
-                    // In this case, opening the app is sufficient.
-                    Intent resultIntent = new Intent(context, MainActivity.class);
-
-                    // The stack builder object will contain an artificial back stack for the
-                    // started Activity.
-                    // This ensures that navigating backward from the Activity leads out of
-                    // your application to the Home screen.
-                    TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
-                    stackBuilder.addNextIntent(resultIntent);
-                    PendingIntent resultPendingIntent =
-                            stackBuilder.getPendingIntent(
-                                    0,
-                                    PendingIntent.FLAG_UPDATE_CURRENT
-                            );
-                    mBuilder.setContentIntent(resultPendingIntent);
-
-                    NotificationManager mNotificationManager =
-                            (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
-                    // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
-                    mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
-
-                    //refreshing last sync
-                    SharedPreferences.Editor editor = prefs.edit();
-                    editor.putLong(lastNotificationKey, System.currentTimeMillis());
-                    editor.commit();
-                }
-                cursor.close();
+                Resources resources = context.getResources();
+                String title = context.getString(R.string.app_name);
+
+                // Define the text of the forecast.
+                String contentText = String.format(context.getString(R.string.format_notification),
+                        today.description, today.formattedHigh, today.formattedLow);
+
+                // NotificationCompatBuilder is a very convenient way to build backward-compatible
+                // notifications.  Just throw in some data.
+                NotificationCompat.Builder mBuilder =
+                        new NotificationCompat.Builder(getContext())
+                                .setColor(resources.getColor(R.color.primary_light))
+                                .setSmallIcon(today.iconResourceId)
+                                .setLargeIcon(today.art)
+                                .setContentTitle(title)
+                                .setContentText(contentText);
+
+                // Make something interesting happen when the user clicks on the notification.
+                // In this case, opening the app is sufficient.
+                Intent resultIntent = new Intent(context, MainActivity.class);
+
+                // The stack builder object will contain an artificial back stack for the
+                // started Activity.
+                // This ensures that navigating backward from the Activity leads out of
+                // your application to the Home screen.
+                TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
+                stackBuilder.addNextIntent(resultIntent);
+                PendingIntent resultPendingIntent =
+                        stackBuilder.getPendingIntent(
+                                0,
+                                PendingIntent.FLAG_UPDATE_CURRENT
+                        );
+                mBuilder.setContentIntent(resultPendingIntent);
+
+                NotificationManager mNotificationManager =
+                        (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
+                // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
+                mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
+
+                //refreshing last sync
+                SharedPreferences.Editor editor = prefs.edit();
+                editor.putLong(lastNotificationKey, System.currentTimeMillis());
+                editor.commit();
             }
         }
     }
 
     /**
-     * Helper method to handle insertion of a new location in the weather database.
-     *
-     * @param locationSetting The location string used to request updates from the server.
-     * @param cityName A human-readable city name, e.g "Mountain View"
-     * @param lat the latitude of the city
-     * @param lon the longitude of the city
-     * @return the row ID of the added location.
+     * Remembers the validators from a location's latest response so the next sync can make a
+     * conditional request (or skip the request while the response is still fresh).
      */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
+    private static ContentProviderOperation buildSaveValidators(ForecastFetcher.Result result) {
+        return ContentProviderOperation.newUpdate(WeatherContract.LocationEntry.CONTENT_URI)
+                .withValue(WeatherContract.LocationEntry.COLUMN_ETAG, result.etag)
+                .withValue(WeatherContract.LocationEntry.COLUMN_LAST_MODIFIED, result.lastModified)
+                .withValue(WeatherContract.LocationEntry.COLUMN_FRESH_UNTIL, result.freshUntil)
+                .withSelection(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                        new String[]{result.locationSetting})
+                .build();
+    }
 
-        // First, check if the location with this city name exists in the db
+    /**
+     * Remembers only how long a location's forecast stays fresh.  WeatherProvider doesn't announce
+     * an update of just this column, so a sync that got nothing but a 304 notifies nobody.
+     */
+    private static ContentProviderOperation buildSaveFreshness(ForecastFetcher.Result result) {
+        return ContentProviderOperation.newUpdate(WeatherContract.LocationEntry.CONTENT_URI)
+                .withValue(WeatherContract.LocationEntry.COLUMN_FRESH_UNTIL, result.freshUntil)
+                .withSelection(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                        new String[]{result.locationSetting})
+                .build();
+    }
+
+    /**
+     * @return the row ID of the location with this setting, or -1 if there isn't one yet.
+     */
+    long queryLocationId(String locationSetting) {
+        // Check if the location with this city name exists in the db
         Cursor locationCursor = getContext().getContentResolver().query(
                 WeatherContract.LocationEntry.CONTENT_URI,
                 new String[]{WeatherContract.LocationEntry._ID},
                 WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
                 new String[]{locationSetting},
                 null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
+        if (locationCursor == null) {
+            return -1;
         }
+        try {
+            return locationCursor.moveToFirst() ? locationCursor.getLong(0) : -1;
+        } finally {
+            locationCursor.close();
+        }
+    }
 
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
+    /**
+     * The values for a new location row.
+     *
+     * @param locationSetting The location string used to request updates from the server.
+     * @param cityName A human-readable city name, e.g "Mountain View"
+     * @param lat the latitude of the city
+     * @param lon the longitude of the city
+     */
+    static ContentValues buildLocationValues(String locationSetting, String cityName,
+                                             double lat, double lon) {
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
+        return locationValues;
     }
 
     /**
@@ -637,4 +493,24 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         spe.putInt(c.getString(R.string.pref_location_status_key), locationStatus);
         spe.commit();
     }
+
+    /**
+     * @return the location the widgets, Muzei and the notification were last updated for, or
+     * null if they never have been.
+     */
+    static private String getUpdatedLocation(Context c) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
+        return sp.getString(c.getString(R.string.pref_updated_location_key), null);
+    }
+
+    /**
+     * Remembers which location everything displaying the weather was last updated for.  Uses
+     * commit, like setLocationStatus, so don't call it from the UI thread.
+     */
+    static private void setUpdatedLocation(Context c, String locationSetting) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
+        SharedPreferences.Editor spe = sp.edit();
+        spe.putString(c.getString(R.string.pref_updated_location_key), locationSetting);
+        spe.commit();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.SuppressLint;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.example.android.sunshine.app.ArtBitmapCache;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Today's weather for the preferred location, with everything the widgets, Muzei and the
+ * notification show already worked out.  A sync builds one from the forecast it just stored and
+ * hands it to all of them, rather than each of them querying and formatting the same row and
+ * fetching the same art.
+ *
+ * The art bitmap stays in this process: a snapshot sent to a service in an Intent arrives
+ * without it.
+ */
+public final class TodaySnapshot implements Parcelable {
+    public static final String EXTRA_TODAY = "com.example.android.sunshine.app.extra.TODAY";
+
+    private static final String[] TODAY_PROJECTION = new String[] {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+    private static final int INDEX_SHORT_DESC = 4;
+
+    public final String locationSetting;
+    public final long date;
+    public final int weatherId;
+    public final double high;
+    public final double low;
+    public final String description;
+    public final String formattedHigh;
+    public final String formattedLow;
+    public final int iconResourceId;
+    public final int artResourceId;
+    public final String artUrl;
+    // Muzei's full size image, or null if there isn't one for this weather
+    public final String imageUrl;
+    // Sized for the notification's large icon; null until loaded with withArt
+    public final Bitmap art;
+
+    private TodaySnapshot(String locationSetting, long date, int weatherId, double high, double low,
+                          String description, String formattedHigh, String formattedLow,
+                          int iconResourceId, int artResourceId, String artUrl, String imageUrl,
+                          Bitmap art) {
+        this.locationSetting = locationSetting;
+        this.date = date;
+        this.weatherId = weatherId;
+        this.high = high;
+        this.low = low;
+        this.description = description;
+        this.formattedHigh = formattedHigh;
+        this.formattedLow = formattedLow;
+        this.iconResourceId = iconResourceId;
+        this.artResourceId = artResourceId;
+        this.artUrl = artUrl;
+        this.imageUrl = imageUrl;
+        this.art = art;
+    }
+
+    private static TodaySnapshot create(Context context, String locationSetting, long date,
+                                        int weatherId, double high, double low, String description) {
+        return new TodaySnapshot(locationSetting, date, weatherId, high, low, description,
+                Utility.formatTemperature(context, high),
+                Utility.formatTemperature(context, low),
+                Utility.getIconResourceForWeatherCondition(weatherId),
+                Utility.getArtResourceForWeatherCondition(weatherId),
+                Utility.getArtUrlForWeatherCondition(context, weatherId),
+                Utility.getImageUrlForWeatherCondition(weatherId),
+                null);
+    }
+
+    /**
+     * @param day one day of a parsed forecast, as ForecastJsonParser produces them.
+     */
+    public static TodaySnapshot fromForecastDay(Context context, String locationSetting,
+                                                ContentValues day) {
+        return create(context, locationSetting,
+                day.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE),
+                day.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID),
+                day.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP),
+                day.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP),
+                day.getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC));
+    }
+
+    /**
+     * Reads today's weather for the preferred location from the provider, for whoever is
+     * asked to show it outside of a sync.
+     *
+     * @return the snapshot, or null if there is no forecast for today.
+     */
+    public static TodaySnapshot query(Context context) {
+        String locationSetting = Utility.getPreferredLocation(context);
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        locationSetting, System.currentTimeMillis()),
+                TODAY_PROJECTION, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return create(context, locationSetting,
+                    cursor.getLong(INDEX_DATE),
+                    cursor.getInt(INDEX_WEATHER_ID),
+                    cursor.getDouble(INDEX_MAX_TEMP),
+                    cursor.getDouble(INDEX_MIN_TEMP),
+                    cursor.getString(INDEX_SHORT_DESC));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the snapshot sent along with this intent, or one read from the provider if there
+     * isn't one.  Null if there is no forecast for today.
+     */
+    public static TodaySnapshot fromIntentOrQuery(Context context, Intent intent) {
+        TodaySnapshot snapshot = intent != null
+                ? intent.<TodaySnapshot>getParcelableExtra(EXTRA_TODAY) : null;
+        if (snapshot != null
+                && snapshot.locationSetting.equals(Utility.getPreferredLocation(context))) {
+            return snapshot;
+        }
+        return query(context);
+    }
+
+    /**
+     * Looks up the art, sized for a notification's large icon.  May read it from disk, so don't
+     * call this on the main thread.
+     *
+     * @return a copy of this snapshot with {@link #art} set.
+     */
+    public TodaySnapshot withArt(Context context) {
+        if (art != null) {
+            return this;
+        }
+        int[] size = getLargeIconSize(context);
+        Bitmap art = ArtBitmapCache.getInstance(context).get(weatherId, size[0], size[1], false);
+        return new TodaySnapshot(locationSetting, date, weatherId, high, low, description,
+                formattedHigh, formattedLow, iconResourceId, artResourceId, artUrl, imageUrl, art);
+    }
+
+    /**
+     * Starts fetching every kind of art at the size withArt wants, so that by the time a sync
+     * needs one it's already there.
+     */
+    public static void prewarmArt(Context context) {
+        int[] size = getLargeIconSize(context);
+        ArtBitmapCache.getInstance(context).prewarm(size[0], size[1], false);
+    }
+
+    private static int[] getLargeIconSize(Context context) {
+        Resources resources = context.getResources();
+        // On Honeycomb and higher devices, we can retrieve the size of the large icon
+        // Prior to that, we use a fixed size
+        @SuppressLint("InlinedApi")
+        int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        @SuppressLint("InlinedApi")
+        int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        return new int[]{largeIconWidth, largeIconHeight};
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(locationSetting);
+        dest.writeLong(date);
+        dest.writeInt(weatherId);
+        dest.writeDouble(high);
+        dest.writeDouble(low);
+        dest.writeString(description);
+        dest.writeString(formattedHigh);
+        dest.writeString(formattedLow);
+        dest.writeInt(iconResourceId);
+        dest.writeInt(artResourceId);
+        dest.writeString(artUrl);
+        dest.writeString(imageUrl);
+    }
+
+    public static final Creator<TodaySnapshot> CREATOR = new Creator<TodaySnapshot>() {
+        @Override
+        public TodaySnapshot createFromParcel(Parcel in) {
+            return new TodaySnapshot(in.readString(), in.readLong(), in.readInt(),
+                    in.readDouble(), in.readDouble(), in.readString(), in.readString(),
+                    in.readString(), in.readInt(), in.readInt(), in.readString(), in.readString(),
+                    null);
+        }
+
+        @Override
+        public TodaySnapshot[] newArray(int size) {
+            return new TodaySnapshot[size];
+        }
+    };
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The phone's end of the link to the watch: one GoogleApiClient, connected the first time it's
+ * needed and kept connected, and one background thread that puts data items through it.
+ *
+ * Puts are coalesced.  If a data item is put while an earlier one for the same path is still
+ * waiting its turn, only the later one is sent, since it would overwrite the earlier one on the
+ * watch anyway.  So however many syncs and requests from the watch pile up, there is at most one
+ * put per path waiting and one in flight.
+ */
+public class WearLink {
+    private static final String LOG_TAG = WearLink.class.getSimpleName();
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 30;
+    private static final long PUT_TIMEOUT_SECONDS = 30;
+
+    /**
+     * Hears whether a put reached the data layer, on the link's thread.  Not called for a put
+     * that was replaced by a later one for the same path before it was sent.
+     */
+    public interface Callback {
+        void onPut(boolean success);
+    }
+
+    /*
+        What actually talks to Play Services, so that tests can stand in for it.  Both block, and
+        are only called on the link's thread.
+     */
+    interface Transport {
+        boolean connect();
+
+        boolean putDataItem(PutDataRequest request);
+    }
+
+    private static WearLink sInstance;
+
+    private final Transport mTransport;
+    private final ExecutorService mSender = Executors.newSingleThreadExecutor();
+    // The latest put for each path that hasn't been sent yet, oldest path first.
+    private final LinkedHashMap<String, Pending> mPending = new LinkedHashMap<String, Pending>();
+    // Whether the sender has been given mDrain and hasn't finished it yet; guarded by mPending
+    private boolean mDraining;
+
+    private final AtomicLong mPuts = new AtomicLong();
+    private final AtomicLong mFailures = new AtomicLong();
+    private final AtomicLong mCoalesced = new AtomicLong();
+    private final AtomicLong mTotalLatencyMillis = new AtomicLong();
+    private final AtomicLong mMaxLatencyMillis = new AtomicLong();
+
+    public static synchronized WearLink getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearLink(new PlayServicesTransport(context.getApplicationContext()));
+        }
+        return sInstance;
+    }
+
+    WearLink(Transport transport) {
+        mTransport = transport;
+    }
+
+    /**
+     * Puts a data item in the background, replacing any put for the same path that is still
+     * waiting to be sent.
+     *
+     * @param callback told whether it worked, or null.
+     */
+    public void put(PutDataRequest request, Callback callback) {
+        String path = request.getUri().getPath();
+        synchronized (mPending) {
+            Pending replaced = mPending.put(path,
+                    new Pending(request, callback, SystemClock.elapsedRealtime()));
+            if (replaced != null) {
+                mCoalesced.incrementAndGet();
+            }
+            if (mDraining) {
+                return;
+            }
+            mDraining = true;
+        }
+        mSender.execute(mDrain);
+    }
+
+    /**
+     * Runs a task on the link's thread, after anything already handed to it; for work such as
+     * reading the provider that has to be done off the main thread before a put.
+     */
+    public void execute(Runnable task) {
+        mSender.execute(task);
+    }
+
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                Pending pending;
+                synchronized (mPending) {
+                    Iterator<Pending> next = mPending.values().iterator();
+                    if (!next.hasNext()) {
+                        mDraining = false;
+                        return;
+                    }
+                    pending = next.next();
+                    next.remove();
+                }
+                send(pending);
+            }
+        }
+    };
+
+    private void send(Pending pending) {
+        long sendStart = SystemClock.elapsedRealtime();
+        boolean success = mTransport.connect() && mTransport.putDataItem(pending.request);
+        long now = SystemClock.elapsedRealtime();
+        // From being asked to having an answer, including any wait behind earlier puts
+        long latency = now - pending.queuedAt;
+        if (success) {
+            mPuts.incrementAndGet();
+            mTotalLatencyMillis.addAndGet(latency);
+            long max;
+            do {
+                max = mMaxLatencyMillis.get();
+            } while (latency > max && !mMaxLatencyMillis.compareAndSet(max, latency));
+        } else {
+            mFailures.incrementAndGet();
+        }
+        Log.v(LOG_TAG, (success ? "Put " : "Failed to put ") + pending.request.getUri().getPath()
+                + " in " + latency + "ms, " + (now - sendStart) + "ms of it sending");
+        if (pending.callback != null) {
+            pending.callback.onPut(success);
+        }
+    }
+
+    /**
+     * @return how many data items have been put successfully.
+     */
+    public long getPutCount() {
+        return mPuts.get();
+    }
+
+    /**
+     * @return how many puts failed, either to connect or in the data layer.
+     */
+    public long getFailureCount() {
+        return mFailures.get();
+    }
+
+    /**
+     * @return how many puts were never sent, because a later one for the same path replaced them.
+     */
+    public long getCoalescedCount() {
+        return mCoalesced.get();
+    }
+
+    /**
+     * @return the mean time from asking for a successful put to it being done, in milliseconds.
+     */
+    public long getMeanLatencyMillis() {
+        long puts = mPuts.get();
+        return puts == 0 ? 0 : mTotalLatencyMillis.get() / puts;
+    }
+
+    public long getMaxLatencyMillis() {
+        return mMaxLatencyMillis.get();
+    }
+
+    private static class Pending {
+        final PutDataRequest request;
+        final Callback callback;
+        final long queuedAt;
+
+        Pending(PutDataRequest request, Callback callback, long queuedAt) {
+            this.request = request;
+            this.callback = callback;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    private static class PlayServicesTransport implements Transport {
+        private final GoogleApiClient mClient;
+
+        PlayServicesTransport(Context context) {
+            mClient = new GoogleApiClient.Builder(context)
+                    .addApi(Wearable.API)
+                    .build();
+        }
+
+        @Override
+        public boolean connect() {
+            if (mClient.isConnected()) {
+                return true;
+            }
+            ConnectionResult result = mClient.blockingConnect(CONNECT_TIMEOUT_SECONDS,
+                    TimeUnit.SECONDS);
+            if (!result.isSuccess()) {
+                Log.e(LOG_TAG, "Failed to connect to GoogleApiClient, error code: "
+                        + result.getErrorCode());
+            }
+            return result.isSuccess();
+        }
+
+        @Override
+        public boolean putDataItem(PutDataRequest request) {
+            DataApi.DataItemResult result = Wearable.DataApi.putDataItem(mClient, request)
+                    .await(PUT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (!result.getStatus().isSuccess()) {
+                Log.e(LOG_TAG, "Failed to putDataItem, status code: "
+                        + result.getStatus().getStatusCode());
+            }
+            return result.getStatus().isSuccess();
+        }
+    }
+}
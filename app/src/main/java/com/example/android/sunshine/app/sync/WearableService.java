@@ -1,151 +1,175 @@
 package com.example.android.sunshine.app.sync;
 
 import android.content.Context;
-import android.content.res.Resources;
+import android.content.SharedPreferences;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.net.Uri;
+import android.preference.PreferenceManager;
 import android.util.Log;
 
-import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.PendingResult;
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.Asset;
-import com.google.android.gms.wearable.DataApi;
+import com.example.android.sunshine.app.wear.WatchWeather;
+import com.example.android.sunshine.app.wear.WeatherPayload;
 import com.google.android.gms.wearable.MessageEvent;
-import com.google.android.gms.wearable.Node;
-import com.google.android.gms.wearable.NodeApi;
 import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
-import com.google.android.gms.wearable.Wearable;
 import com.google.android.gms.wearable.WearableListenerService;
 
-import java.io.ByteArrayOutputStream;
-import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 //Class that extends WearableListenerService to receive the update message requested by the wear device.
-//When it receives the update message the sendData() function will be called. This function will retrieve the
-//the latest high and low as well as the image and send it via DataItem.
+//The phone pushes the forecast whenever it changes, so the watch only asks when it starts and finds no
+//forecast in the data layer at all. sendData() reads the next few days of the forecast and sends them
+//as a single WeatherPayload DataItem, unless the watch already has exactly that forecast.
 
 public class WearableService extends WearableListenerService {
 
-    private static final String MESSAGE = "/update";
-    private static final String WEATHER_HI_LOW_KEY = "weather_HI_LOW";
-    private static final String WEATHER_PATH = "/weather_HI_LOW";
-    private static final String WEATHER_IMAGE_KEY = "image";
-    private static final String WEATHER_IMAGE_PATH = "/image";
-    private static final long CONNECTION_TIME_OUT_MS = 30;
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
+    private static final String LOG_TAG = "WearableService";
+    // Today and the next few days; the watch face only shows today for now.
+    private static final int WEAR_FORECAST_DAYS = 5;
+
+    private static final String[] WEAR_PROJECTION = new String[] {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
     };
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+
+    // Since the process started: updates put on the link, and updates skipped as already sent
+    private static final AtomicLong sSentCount = new AtomicLong();
+    private static final AtomicLong sSuppressedCount = new AtomicLong();
 
     @Override
     public void onMessageReceived(MessageEvent messageEvent) {
-        String LOG_TAG = "WearableService";
-        if (messageEvent.getPath().equals(MESSAGE)) {
-            sendData(getBaseContext());
+        if (messageEvent.getPath().equals(WatchWeather.REQUEST_PATH)) {
+            // The watch has nothing to show, whatever was sent before, so send it again.
+            sendData(getBaseContext(), true, WearLink.getInstance(getBaseContext()));
             Log.v(LOG_TAG, messageEvent.getPath());
         }
     }
 
-    private static Asset createAssetFromBitmap(Bitmap bitmap) {
-        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
-        return Asset.createFromBytes(byteStream.toByteArray());
+    /**
+     * Reads the forecast for the preferred location from today on.  Queries the provider, so
+     * don't call this on the main thread.
+     *
+     * @return the payload for the watch, or null if there is no forecast for today.
+     */
+    static WeatherPayload queryPayload(Context context) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        Utility.getPreferredLocation(context), System.currentTimeMillis()),
+                WEAR_PROJECTION, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            int days = Math.min(cursor.getCount(), WEAR_FORECAST_DAYS);
+            if (days == 0) {
+                return null;
+            }
+            long[] dates = new long[days];
+            int[] weatherIds = new int[days];
+            float[] highs = new float[days];
+            float[] lows = new float[days];
+            for (int i = 0; i < days && cursor.moveToPosition(i); i++) {
+                dates[i] = cursor.getLong(INDEX_DATE);
+                weatherIds[i] = cursor.getInt(INDEX_WEATHER_ID);
+                highs[i] = (float) cursor.getDouble(INDEX_MAX_TEMP);
+                lows[i] = (float) cursor.getDouble(INDEX_MIN_TEMP);
+            }
+            return new WeatherPayload(System.currentTimeMillis(), Utility.isMetric(context),
+                    dates, weatherIds, highs, lows);
+        } finally {
+            cursor.close();
+        }
     }
 
+    /**
+     * Sends the forecast from today on to the watch, which draws its own art for the weather.
+     * Queries the provider, so don't call this on the main thread.
+     */
     public static void sendData(Context context) {
-        final GoogleApiClient client = new GoogleApiClient.Builder(context)
-                .addApi(Wearable.API)
-                .build();
-        String locationQuery = Utility.getPreferredLocation(context);
-        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-        // we'll query our contentProvider, as always
-        Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            final String high = Utility.formatTemperature(context, cursor.getDouble(INDEX_MAX_TEMP));
-            final String low = Utility.formatTemperature(context, cursor.getDouble(INDEX_MIN_TEMP));
-
-            Resources resources = context.getResources();
-            int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-            String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
-            Bitmap largeIcon;
-            try {
-                largeIcon = Glide.with(context)
-                        .load(artUrl)
-                        .asBitmap()
-                        .error(artResourceId)
-                        .fitCenter()
-                        .into(96, 96).get();
-            } catch (InterruptedException | ExecutionException e) {
-                Log.e("WearableService", "Error retrieving large icon from " + artUrl, e);
-                largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
+        sendData(context, false, WearLink.getInstance(context));
+    }
+
+    /**
+     * Sends the forecast to the watch from the link's thread, for callers on the main thread.
+     */
+    public static void sendDataInBackground(Context context) {
+        final Context appContext = context.getApplicationContext();
+        WearLink.getInstance(appContext).execute(new Runnable() {
+            @Override
+            public void run() {
+                sendData(appContext);
             }
-            final Asset asset = createAssetFromBitmap(largeIcon);
-            final String weather = high + " " + low;
-
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(WEATHER_PATH);
-                    putDataMapRequest.getDataMap().putString(WEATHER_HI_LOW_KEY, weather);
-                    PutDataRequest request = putDataMapRequest.asPutDataRequest();
-
-                    PutDataMapRequest  requestImage = PutDataMapRequest.create(WEATHER_IMAGE_PATH);
-                    requestImage.getDataMap().putAsset(WEATHER_IMAGE_KEY, asset);
-                    PutDataRequest requestImages = requestImage.asPutDataRequest();
-
-                    Log.v("WearableService", "Generating DataItem: " + request);
-                    if (!client.isConnected() || !client.isConnecting()) {
-                        ConnectionResult connectionResult = client
-                                .blockingConnect(CONNECTION_TIME_OUT_MS, TimeUnit.SECONDS);
-                        if (!connectionResult.isSuccess()) {
-                            Log.e("WearableService", "DataLayerListenerService failed to connect to GoogleApiClient, "
-                                    + "error code: " + connectionResult.getErrorCode());
-                            return;
-                        }
-                    }
-                    Wearable.DataApi.putDataItem(client, request)
-                            .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                                @Override
-                                public void onResult(DataApi.DataItemResult dataItemResult) {
-                                    if (!dataItemResult.getStatus().isSuccess()) {
-                                        Log.e("WearableService", "ERROR: failed to putDataItem, status code: "
-                                                + dataItemResult.getStatus().getStatusCode());
-                                    }
-                                }
-                            });
-
-                    Wearable.DataApi.putDataItem(client, requestImages)
-                            .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                                @Override
-                                public void onResult(DataApi.DataItemResult dataItemResult) {
-                                    if (!dataItemResult.getStatus().isSuccess()) {
-                                        Log.e("WearableService", "ERROR: failed to putDataItem, status code: "
-                                                + dataItemResult.getStatus().getStatusCode());
-                                    }
-                                }
-                            });
-                }
-            }).start();
+        });
+    }
+
+    /**
+     * @param force whether to send the forecast even if it's the one last sent.
+     */
+    static void sendData(Context context, boolean force, WearLink link) {
+        WeatherPayload payload = queryPayload(context);
+        if (payload == null) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        final long hash = payload.contentHash();
+        if (!force && hash == getLastSentHash(appContext)) {
+            // Data items stay put, so the watch still has this forecast.
+            sSuppressedCount.incrementAndGet();
+            Log.v(LOG_TAG, "Not sending the watch the forecast it already has");
+            return;
         }
-        cursor.close();
+        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(WeatherPayload.PATH);
+        payload.writeTo(putDataMapRequest.getDataMap());
+        PutDataRequest request = putDataMapRequest.asPutDataRequest();
+        Log.v(LOG_TAG, "Generating DataItem: " + payload.getDayCount() + " days in "
+                + request.getData().length + " bytes");
+        link.put(request, new WearLink.Callback() {
+            @Override
+            public void onPut(boolean success) {
+                if (success) {
+                    sSentCount.incrementAndGet();
+                    setLastSentHash(appContext, hash);
+                }
+            }
+        });
     }
 
-}
+    private static long getLastSentHash(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return prefs.getLong(context.getString(R.string.pref_wear_payload_hash_key), 0);
+    }
+
+    /**
+     * Remembers that the watch has this payload, so that sendData doesn't send it again.
+     */
+    static void setLastSentHash(Context context, long hash) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        prefs.edit().putLong(context.getString(R.string.pref_wear_payload_hash_key), hash).apply();
+    }
 
+    /**
+     * @return how many updates have been put on the link since the process started.
+     */
+    public static long getSentCount() {
+        return sSentCount.get();
+    }
+
+    /**
+     * @return how many updates have been skipped since the process started, because the watch
+     * already had the same forecast.
+     */
+    public static long getSuppressedCount() {
+        return sSuppressedCount.get();
+    }
+
+}
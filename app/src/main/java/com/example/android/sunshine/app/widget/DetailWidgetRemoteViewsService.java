@@ -7,19 +7,16 @@ import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
-import android.util.Log;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.ArtBitmapCache;
+import com.example.android.sunshine.app.ForecastFormatter;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
-import java.util.concurrent.ExecutionException;
-
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
  */
@@ -46,10 +43,13 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
             private Cursor data = null;
+            private int mIconSize;
+            private ForecastFormatter mFormatter;
 
             @Override
             public void onCreate() {
-                // Nothing to do
+                mIconSize = getResources().getDimensionPixelSize(R.dimen.list_icon);
+                mFormatter = new ForecastFormatter(DetailWidgetRemoteViewsService.this);
             }
 
             @Override
@@ -71,6 +71,10 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         null,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
                 Binder.restoreCallingIdentity(identityToken);
+                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
+                    ArtBitmapCache.getInstance(DetailWidgetRemoteViewsService.this)
+                            .prewarm(mIconSize, mIconSize, false);
+                }
             }
 
             @Override
@@ -98,28 +102,16 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
                 Bitmap weatherArtImage = null;
                 if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
+                    weatherArtImage = ArtBitmapCache.getInstance(DetailWidgetRemoteViewsService.this)
+                            .get(weatherId, mIconSize, mIconSize, false);
                 }
                 String description = data.getString(INDEX_WEATHER_DESC);
                 long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
-                String formattedDate = Utility.getFriendlyDayString(
-                        DetailWidgetRemoteViewsService.this, dateInMillis, false);
+                String formattedDate = mFormatter.getFriendlyDayString(dateInMillis, false);
                 double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
                 double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
-                String formattedMaxTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
-                String formattedMinTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, minTemp);
+                String formattedMaxTemperature = mFormatter.formatTemperature(maxTemp);
+                String formattedMinTemperature = mFormatter.formatTemperature(minTemp);
                 if (weatherArtImage != null) {
                     views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
                 } else {
@@ -21,8 +21,6 @@ import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
@@ -31,25 +29,12 @@ import android.widget.RemoteViews;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
-import com.example.android.sunshine.app.Utility;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.TodaySnapshot;
 
 /**
  * IntentService which handles updating all Today widgets with the latest data
  */
 public class TodayWidgetIntentService extends IntentService {
-    private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
-    };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
-    private static final int INDEX_MAX_TEMP = 2;
-    private static final int INDEX_MIN_TEMP = 3;
-
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
     }
@@ -61,29 +46,17 @@ public class TodayWidgetIntentService extends IntentService {
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
                 TodayWidgetProvider.class));
 
-        // Get today's data from the ContentProvider
-        String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (data == null) {
-            return;
-        }
-        if (!data.moveToFirst()) {
-            data.close();
+        // Get today's data from the sync that sent us, or else from the ContentProvider
+        TodaySnapshot today = TodaySnapshot.fromIntentOrQuery(this, intent);
+        if (today == null) {
             return;
         }
 
-        // Extract the weather data from the Cursor
-        int weatherId = data.getInt(INDEX_WEATHER_ID);
-        int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-        String description = data.getString(INDEX_SHORT_DESC);
-        double maxTemp = data.getDouble(INDEX_MAX_TEMP);
-        double minTemp = data.getDouble(INDEX_MIN_TEMP);
-        String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
-        String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
-        data.close();
+        // Extract the weather data from the snapshot
+        int weatherArtResourceId = today.artResourceId;
+        String description = today.description;
+        String formattedMaxTemperature = today.formattedHigh;
+        String formattedMinTemperature = today.formattedLow;
 
         // Perform this loop procedure for each Today widget
         for (int appWidgetId : appWidgetIds) {
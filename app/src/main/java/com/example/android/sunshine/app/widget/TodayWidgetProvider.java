@@ -47,7 +47,9 @@ public class TodayWidgetProvider extends AppWidgetProvider {
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            context.startService(new Intent(context, TodayWidgetIntentService.class));
+            // Passes on the sync's snapshot of today, so the service needn't read it back.
+            context.startService(new Intent(context, TodayWidgetIntentService.class)
+                    .putExtras(intent));
         }
     }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.util.Arrays;
+
+/**
+ * Groups OpenWeatherMap condition ids into the kinds of weather that share an icon and art,
+ * worked out once for every id from 200 to 962 so that a lookup is an array index.
+ *
+ * Built into the phone and the watch, so that both draw the same art for the same weather.  Each
+ * keeps its own arrays of drawables, indexed by kind.
+ */
+final class WeatherKinds {
+    static final int FIRST_ID = 200;
+    static final int LAST_ID = 962;
+
+    static final int NONE = -1;
+    static final int STORM = 0;
+    static final int LIGHT_RAIN = 1;
+    static final int RAIN = 2;
+    static final int SNOW = 3;
+    static final int FOG = 4;
+    // Squalls and tornadoes: storm art, but a picture of the dust ahead of the storm.
+    static final int SQUALL = 5;
+    static final int CLEAR = 6;
+    static final int LIGHT_CLOUDS = 7;
+    static final int CLOUDS = 8;
+    // How long an array indexed by kind must be
+    static final int COUNT = 9;
+
+    // indexed by weather id - FIRST_ID
+    private static final byte[] sKinds = new byte[LAST_ID - FIRST_ID + 1];
+
+    static {
+        Arrays.fill(sKinds, (byte) NONE);
+        setKind(200, 232, STORM);
+        setKind(300, 321, LIGHT_RAIN);
+        setKind(500, 504, RAIN);
+        setKind(511, 511, SNOW);
+        setKind(520, 531, RAIN);
+        setKind(600, 622, SNOW);
+        // 761 (dust) has always been drawn as fog, and 762 (volcanic ash) and 771 (squalls)
+        // have never had any art.
+        setKind(701, 761, FOG);
+        setKind(781, 781, SQUALL);
+        setKind(800, 800, CLEAR);
+        setKind(801, 801, LIGHT_CLOUDS);
+        setKind(802, 804, CLOUDS);
+    }
+
+    private WeatherKinds() {
+    }
+
+    private static void setKind(int firstId, int lastId, int kind) {
+        Arrays.fill(sKinds, firstId - FIRST_ID, lastId - FIRST_ID + 1, (byte) kind);
+    }
+
+    /**
+     * @return the kind of weather this is, or {@link #NONE} if it has no icon or art.
+     */
+    static int getKind(int weatherId) {
+        return weatherId >= FIRST_ID && weatherId <= LAST_ID ? sKinds[weatherId - FIRST_ID] : NONE;
+    }
+}
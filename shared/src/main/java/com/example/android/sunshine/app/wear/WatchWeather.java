@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import com.google.android.gms.wearable.DataMap;
+
+/**
+ * The watch face's end of keeping up with the weather: reads what the phone puts at
+ * {@link WeatherPayload#PATH}, and decides when the watch has to ask for it.
+ *
+ * The phone pushes every change by itself, so the watch only asks when its data layer has
+ * nothing it can read.  It keeps asking, each time it connects, until a request has reached a
+ * phone, and then leaves it to the phone.
+ *
+ * Makes no Play Services calls of its own, so that the phone's tests can play the watch's part
+ * against what the phone really puts.
+ */
+public final class WatchWeather {
+    /** The message the watch sends the phone to ask for the weather. */
+    public static final String REQUEST_PATH = "/update";
+
+    private WeatherPayload mWeather;
+    private boolean mRequestDelivered;
+
+    /**
+     * Reads weather the phone put, as the watch hears about it.
+     *
+     * @return whether there was weather this watch face could read.  If not, whatever it read
+     * before is kept.
+     */
+    public boolean onWeather(DataMap dataMap) {
+        WeatherPayload weather = WeatherPayload.fromDataMap(dataMap);
+        if (weather == null || weather.getDayCount() == 0) {
+            return false;
+        }
+        mWeather = weather;
+        return true;
+    }
+
+    /**
+     * Catches up with the data layer when the watch face connects.
+     *
+     * @param stored the data layer's item at {@link WeatherPayload#PATH}, or null if it has none.
+     * @return whether to ask the phone for the weather.
+     */
+    public boolean onConnected(DataMap stored) {
+        boolean found = stored != null && onWeather(stored);
+        return !found && !mRequestDelivered;
+    }
+
+    /**
+     * Records that a request reached a phone, which will put the weather whether or not it has
+     * sent it before.
+     */
+    public void onRequestDelivered() {
+        mRequestDelivered = true;
+    }
+
+    /**
+     * @return the latest weather the watch could read, or null if there hasn't been any.
+     */
+    public WeatherPayload getWeather() {
+        return mWeather;
+    }
+}
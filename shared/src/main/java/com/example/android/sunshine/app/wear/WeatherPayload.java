@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import com.google.android.gms.wearable.DataMap;
+
+import java.util.ArrayList;
+
+/**
+ * The weather the phone sends the watch, as a single data item at {@link #PATH}.  Both the app
+ * and the wearable module build this same class, so the two ends can't disagree about it.
+ *
+ * Everything is sent as numbers: temperatures in Celsius, as the forecast stores them, along with
+ * whether the user wants them in Celsius, and weather ids rather than pictures.  The watch formats
+ * the temperatures itself and draws the art it was built with, so a routine update is a few
+ * hundred bytes instead of a PNG.  Day 0 is today.
+ *
+ * Keys are short because they are sent with every update.  Adding a key doesn't need a new
+ * {@link #VERSION}; changing what an existing key means does, and a watch ignores payloads of a
+ * version it doesn't know.
+ */
+public final class WeatherPayload {
+    public static final String PATH = "/weather";
+    public static final int VERSION = 1;
+
+    private static final String KEY_VERSION = "v";
+    private static final String KEY_TIMESTAMP = "t";
+    private static final String KEY_METRIC = "m";
+    private static final String KEY_DATES = "d";
+    private static final String KEY_WEATHER_IDS = "w";
+    private static final String KEY_HIGHS = "h";
+    private static final String KEY_LOWS = "l";
+
+    // When the phone built this, in milliseconds since the epoch
+    public final long timestamp;
+    public final boolean metric;
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final float[] mHighs;
+    private final float[] mLows;
+
+    /**
+     * @param dates      the start of each day, as the forecast stores them.
+     * @param weatherIds the OpenWeatherMap condition for each day.
+     * @param highs      each day's high, in Celsius.
+     * @param lows       each day's low, in Celsius.
+     */
+    public WeatherPayload(long timestamp, boolean metric, long[] dates, int[] weatherIds,
+                          float[] highs, float[] lows) {
+        if (weatherIds.length != dates.length || highs.length != dates.length
+                || lows.length != dates.length) {
+            throw new IllegalArgumentException("Every day needs a date, weather, high and low");
+        }
+        this.timestamp = timestamp;
+        this.metric = metric;
+        mDates = dates;
+        mWeatherIds = weatherIds;
+        mHighs = highs;
+        mLows = lows;
+    }
+
+    /**
+     * @return the payload in this data map, or null if it isn't one this end understands.
+     */
+    public static WeatherPayload fromDataMap(DataMap map) {
+        if (map.getInt(KEY_VERSION) != VERSION) {
+            return null;
+        }
+        long[] dates = map.getLongArray(KEY_DATES);
+        ArrayList<Integer> weatherIds = map.getIntegerArrayList(KEY_WEATHER_IDS);
+        float[] highs = map.getFloatArray(KEY_HIGHS);
+        float[] lows = map.getFloatArray(KEY_LOWS);
+        if (dates == null || weatherIds == null || highs == null || lows == null
+                || weatherIds.size() != dates.length || highs.length != dates.length
+                || lows.length != dates.length) {
+            return null;
+        }
+        int[] ids = new int[weatherIds.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = weatherIds.get(i);
+        }
+        return new WeatherPayload(map.getLong(KEY_TIMESTAMP), map.getBoolean(KEY_METRIC),
+                dates, ids, highs, lows);
+    }
+
+    /**
+     * Puts this payload into a data map, usually the one of a PutDataMapRequest at {@link #PATH}.
+     */
+    public void writeTo(DataMap map) {
+        map.putInt(KEY_VERSION, VERSION);
+        map.putLong(KEY_TIMESTAMP, timestamp);
+        map.putBoolean(KEY_METRIC, metric);
+        map.putLongArray(KEY_DATES, mDates);
+        ArrayList<Integer> weatherIds = new ArrayList<Integer>(mWeatherIds.length);
+        for (int weatherId : mWeatherIds) {
+            weatherIds.add(weatherId);
+        }
+        map.putIntegerArrayList(KEY_WEATHER_IDS, weatherIds);
+        map.putFloatArray(KEY_HIGHS, mHighs);
+        map.putFloatArray(KEY_LOWS, mLows);
+    }
+
+    /**
+     * @return a hash of the weather in this payload, leaving out when it was built, so that the
+     * phone can tell whether the watch already has it.
+     */
+    public long contentHash() {
+        // 64 bit FNV-1a, so that two different forecasts practically never collide.
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, metric ? 1 : 0);
+        for (int i = 0; i < mDates.length; i++) {
+            hash = mix(hash, mDates[i]);
+            hash = mix(hash, mWeatherIds[i]);
+            hash = mix(hash, Float.floatToIntBits(mHighs[i]));
+            hash = mix(hash, Float.floatToIntBits(mLows[i]));
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public int getDayCount() {
+        return mDates.length;
+    }
+
+    public long getDate(int day) {
+        return mDates[day];
+    }
+
+    public int getWeatherId(int day) {
+        return mWeatherIds[day];
+    }
+
+    /**
+     * @return the day's high in the units the user wants to see.
+     */
+    public float getHigh(int day) {
+        return toDisplayUnits(mHighs[day]);
+    }
+
+    /**
+     * @return the day's low in the units the user wants to see.
+     */
+    public float getLow(int day) {
+        return toDisplayUnits(mLows[day]);
+    }
+
+    public float getHighCelsius(int day) {
+        return mHighs[day];
+    }
+
+    public float getLowCelsius(int day) {
+        return mLows[day];
+    }
+
+    private float toDisplayUnits(float celsius) {
+        return metric ? celsius : celsius * 1.8f + 32;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+/*
+    Checks that the watch face formats the time as it used to, works out its ambient icons once
+    for each change of weather, and that drawing a frame allocates nothing in interactive,
+    ambient or low-bit ambient mode.
+ */
+public class TestWatchFaceRenderer extends AndroidTestCase {
+
+    private static final int SIZE = 320;
+    private static final int FRAMES = 60;
+    private static final int CLEAR = 800;
+    private static final int RAIN = 501;
+
+    private Canvas mCanvas;
+    private Rect mBounds;
+    private Time mTime;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCanvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+        mTime = new Time();
+        mTime.set(7, 5, 9, 18, 9, 2016);
+    }
+
+    public void testNoAllocationsPerFrame() {
+        WatchFaceRenderer renderer = newRenderer();
+        renderer.setLowBitAmbient(true);
+
+        assertNoAllocations("interactive", renderer);
+        renderer.setAmbient(true);
+        assertNoAllocations("low-bit ambient", renderer);
+        renderer.setLowBitAmbient(false);
+        assertNoAllocations("ambient", renderer);
+    }
+
+    public void testAmbientIconsCached() {
+        WatchFaceRenderer renderer = newRenderer();
+        renderer.setLowBitAmbient(true);
+        renderer.setAmbient(true);
+        Bitmap lowBit = renderer.getIcon();
+        assertNotNull("Error: no low-bit icon", lowBit);
+        for (int x = 0; x < lowBit.getWidth(); x++) {
+            for (int y = 0; y < lowBit.getHeight(); y++) {
+                int pixel = lowBit.getPixel(x, y);
+                assertTrue("Error: low-bit icon has a partly lit pixel at " + x + "," + y,
+                        pixel == Color.WHITE || pixel == Color.TRANSPARENT);
+            }
+        }
+
+        // New temperatures for the same weather keep the icons.
+        renderer.setWeather("21°", "8°", CLEAR);
+        assertSame("Error: the low-bit icon was made again", lowBit, renderer.getIcon());
+        renderer.setLowBitAmbient(false);
+        Bitmap ambient = renderer.getIcon();
+        assertNotNull("Error: no ambient icon", ambient);
+        renderer.setAmbient(false);
+        renderer.setAmbient(true);
+        assertSame("Error: the ambient icon was loaded again", ambient, renderer.getIcon());
+
+        renderer.setWeather("15°", "9°", RAIN);
+        assertNotSame("Error: the icon didn't follow the weather", ambient, renderer.getIcon());
+        renderer.setWeather(null, null, -1);
+        assertNull("Error: an icon for weather there's no art for", renderer.getIcon());
+    }
+
+    public void testTimeFormat() {
+        WatchFaceRenderer renderer = newRenderer();
+        int[][] times = {{0, 0, 0}, {7, 5, 9}, {9, 59, 59}, {10, 0, 1}, {23, 30, 59}};
+        for (int[] time : times) {
+            mTime.hour = time[0];
+            mTime.minute = time[1];
+            mTime.second = time[2];
+            assertEquals("Error: wrong interactive time",
+                    String.format("%d:%02d:%02d", mTime.hour, mTime.minute, mTime.second),
+                    new String(renderer.mTimeText, 0, renderer.formatTime(mTime, true)));
+            assertEquals("Error: wrong ambient time",
+                    String.format("%d:%02d", mTime.hour, mTime.minute),
+                    new String(renderer.mTimeText, 0, renderer.formatTime(mTime, false)));
+        }
+    }
+
+    private WatchFaceRenderer newRenderer() {
+        WatchFaceRenderer renderer = new WatchFaceRenderer(mContext.getResources());
+        renderer.applyWindowInsets(true);
+        renderer.setWeather("21°", "7°", CLEAR);
+        return renderer;
+    }
+
+    private void assertNoAllocations(String mode, WatchFaceRenderer renderer) {
+        // The first frame may warm up the canvas and the font caches.
+        renderer.draw(mCanvas, mBounds, mTime);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < FRAMES; i++) {
+            mTime.second = i % 60;
+            renderer.draw(mCanvas, mBounds, mTime);
+        }
+        Debug.stopAllocCounting();
+
+        assertEquals("Error: drawing a frame in " + mode + " mode allocated",
+                0, Debug.getThreadAllocCount());
+    }
+}
@@ -20,17 +20,8 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.res.Resources;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.ColorMatrix;
-import android.graphics.ColorMatrixColorFilter;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
@@ -42,10 +33,11 @@ import android.view.Gravity;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
+import com.example.android.sunshine.app.wear.WatchWeather;
+import com.example.android.sunshine.app.wear.WeatherPayload;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
@@ -53,13 +45,12 @@ import com.google.android.gms.wearable.DataItem;
 import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.MessageApi;
 import com.google.android.gms.wearable.Node;
 import com.google.android.gms.wearable.NodeApi;
 import com.google.android.gms.wearable.Wearable;
 
-import java.io.InputStream;
 import java.lang.ref.WeakReference;
-import java.util.List;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -68,9 +59,6 @@ import java.util.concurrent.TimeUnit;
  * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
  */
 public class MyWatchFace extends CanvasWatchFaceService {
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create("sans-serif-condensed-light", Typeface.NORMAL);
-
     /**
      * Update rate in milliseconds for interactive mode. We update once a second since seconds are
      * displayed in interactive mode.
@@ -79,10 +67,8 @@ public class MyWatchFace extends CanvasWatchFaceService {
 
     /**
      * Handler message id for updating the time periodically in interactive mode.
-     * Handler message to update the weather information.
      */
     private static final int MSG_UPDATE_TIME = 0;
-    private static final int MSG_UPDATE_WEATHER= 1;
 
     @Override
     public Engine onCreateEngine() {
@@ -105,12 +91,6 @@ public class MyWatchFace extends CanvasWatchFaceService {
                         engine.handleUpdateTimeMessage();
                         break;
                 }
-                //Handler to send a message to update the weather. This occurs every 30 minutes.
-                switch (msg.what) {
-                    case MSG_UPDATE_WEATHER:
-                        engine.handleUpdateWeatherMessage();
-                        break;
-                }
             }
         }
     }
@@ -118,25 +98,18 @@ public class MyWatchFace extends CanvasWatchFaceService {
     private class Engine extends CanvasWatchFaceService.Engine implements GoogleApiClient.ConnectionCallbacks,
             GoogleApiClient.OnConnectionFailedListener {
 
-        public static final int WEATHER_UPDATE_TIME = 30; //Updates weather every 30 minutes
-        public static final String WEATHER_HI_LOW_PATH = "/weather_HI_LOW";
-        public static final String WEATHER_HI_LOW_KEY = "weather_HI_LOW";
-        private static final String WEATHER_IMAGE_KEY = "image";
-        private static final String WEATHER_IMAGE_PATH = "/image";
         private static final String TAG = "CanvasWatchFaceService";
         GoogleApiClient mGoogleApiClient;
 
         final Handler mUpdateTimeHandler = new EngineHandler(this);
-        final Handler mUpdateWeatherHandler = new EngineHandler(this);
         boolean mRegisteredTimeZoneReceiver = false;
-        Paint mBackgroundPaint;
-        Paint mTextPaint;
-        Paint mWeatherHiTextPaint;
-        Paint mWeatherLoTextPaint;
-        Paint mLinePaint;
-        Bitmap mWeatherIcon;
-        String hi;
-        String low;
+        //Draws everything, from paints and art that it only works out again when they change.
+        WatchFaceRenderer mRenderer;
+        //Reads the weather the phone pushes, and decides when to ask for it.
+        final WatchWeather mWatchWeather = new WatchWeather();
+        //The weather on show, and which of its days.
+        WeatherPayload mWeather;
+        int mWeatherDay = -1;
         boolean mAmbient;
         Time mTime;
         Time mLastRefreshTime;
@@ -148,11 +121,6 @@ public class MyWatchFace extends CanvasWatchFaceService {
                 mTime.setToNow();
             }
         };
-        float mXOffset;
-        float mYOffset;
-
-        private static final String MESSAGE = "/update";
-        private String nodeId;
 
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
@@ -176,48 +144,26 @@ public class MyWatchFace extends CanvasWatchFaceService {
                     .setHotwordIndicatorGravity(Gravity.TOP | Gravity.CENTER_HORIZONTAL)
                     .setShowSystemUiTime(false)
                     .build());
-            Resources resources = MyWatchFace.this.getResources();
-            mYOffset = resources.getDimension(R.dimen.digital_y_offset);
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(resources.getColor(R.color.background));
-            mTextPaint = new Paint();
-            mTextPaint = createTextPaint(resources.getColor(R.color.digital_text));
-            mWeatherHiTextPaint = new Paint();
-            mWeatherHiTextPaint = createTextPaint(resources.getColor(R.color.digital_text));
-            mWeatherLoTextPaint = new Paint();
-            mWeatherLoTextPaint = createTextPaint(resources.getColor(R.color.weather_low_color));
-            mLinePaint = new Paint();
-            mLinePaint = createTextPaint(resources.getColor(R.color.line_color));
+            mRenderer = new WatchFaceRenderer(MyWatchFace.this.getResources());
             mTime = new Time();
             mTime.setToNow();
             mLastRefreshTime = new Time();
-            //start the timer to update the weather data every 30 minutes.
-            mUpdateWeatherHandler.sendEmptyMessage(MSG_UPDATE_WEATHER);
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
-            mUpdateWeatherHandler.removeMessages(MSG_UPDATE_WEATHER);
             releaseGoogleApiClient();
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int textColor) {
-            Paint paint = new Paint();
-            paint.setColor(textColor);
-            paint.setTypeface(NORMAL_TYPEFACE);
-            paint.setAntiAlias(true);
-            return paint;
-        }
-
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
             if (visible) {
                 registerReceiver();
+                //Catches up with any weather pushed while we weren't listening; see onConnected.
                 mGoogleApiClient.connect();
-              //  sendUpdateMessage();
                 // Update time zone in case it changed while we weren't visible.
                 mTime.clear(TimeZone.getDefault().getID());
                 mTime.setToNow();
@@ -259,30 +205,21 @@ public class MyWatchFace extends CanvasWatchFaceService {
         public void onApplyWindowInsets(WindowInsets insets) {
             super.onApplyWindowInsets(insets);
             // Load resources that have alternate values for round watches.
-            Resources resources = MyWatchFace.this.getResources();
-            boolean isRound = insets.isRound();
-            mXOffset = resources.getDimension(isRound
-                    ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset);
-            float textSize = resources.getDimension(isRound
-                    ? R.dimen.digital_text_size_round : R.dimen.digital_text_size);
-            float weatherLowTextSize = resources.getDimension(isRound
-                    ? R.dimen.weather__low_text_size_round : R.dimen.weather_low_text_size);
-            float weatherHiTextSize = resources.getDimension(isRound
-                    ? R.dimen.weather__hi_text_size_round : R.dimen.weather_hi_text_size);
-            mWeatherLoTextPaint.setTextSize(weatherLowTextSize);
-            mWeatherHiTextPaint.setTextSize(weatherHiTextSize);
-            mTextPaint.setTextSize(textSize);
+            mRenderer.applyWindowInsets(insets.isRound());
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mRenderer.setLowBitAmbient(mLowBitAmbient);
         }
 
         @Override
         public void onTimeTick() {
             super.onTimeTick();
+            //Moves on to the next day of the forecast at midnight.
+            showWeather();
             invalidate();
         }
 
@@ -291,55 +228,20 @@ public class MyWatchFace extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    mTextPaint.setAntiAlias(!inAmbientMode);
-                    mWeatherHiTextPaint.setAntiAlias(!inAmbientMode);
-                    mWeatherLoTextPaint.setAntiAlias(!inAmbientMode);
-                    mLinePaint.setAntiAlias(!inAmbientMode);
-                }
+                //Also readies the icon for low-bit ambient mode, so onDraw doesn't have to.
+                mRenderer.setAmbient(inAmbientMode);
                 invalidate();
             }
             // Whether the timer should be running depends on whether we're visible (as well as
             // whether we're in ambient mode), so we may need to start or stop the timer.
             updateTimer();
-
-            //Update weather data when off ambient mode
-            releaseGoogleApiClient();
-            mGoogleApiClient.connect();
-            sendUpdateMessage();
         }
 
+        //Runs every second, so allocates nothing; see WatchFaceRenderer.
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-            }
-            // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
             mTime.setToNow();
-            String text = mAmbient
-                    ? String.format("%d:%02d", mTime.hour, mTime.minute)
-                    : String.format("%d:%02d:%02d", mTime.hour, mTime.minute, mTime.second);
-            canvas.drawText(text, bounds.centerX()-(mTextPaint.measureText(text))/2, bounds.centerY()-60, mTextPaint);
-            canvas.drawLine(bounds.centerX()-(mTextPaint.getTextSize()), bounds.centerY()-50, bounds.centerX()+(mTextPaint.getTextSize()),bounds.centerY()-50, mLinePaint);
-
-            if(mWeatherIcon!=null) {
-                if(!isInAmbientMode()) {
-                    canvas.drawBitmap(mWeatherIcon, canvas.getWidth() / 2 - mWeatherIcon.getWidth() / 2, canvas.getHeight() / 2 - mWeatherIcon.getWidth() / 2, mTextPaint);
-                    canvas.drawLine(bounds.centerX(), bounds.centerY() + (mWeatherIcon.getHeight() / 2), bounds.centerX(), bounds.bottom - 10, mLinePaint);
-                }
-                else {
-                    //Convert image to grayscale if in ambient mode.
-                    canvas.drawBitmap(toGrayscale(mWeatherIcon), canvas.getWidth() / 2 - mWeatherIcon.getWidth() / 2, canvas.getHeight() / 2 - mWeatherIcon.getWidth() / 2, mTextPaint);
-                    canvas.drawLine(bounds.centerX(), bounds.centerY() + (mWeatherIcon.getHeight() / 2), bounds.centerX(), bounds.bottom - 10, mLinePaint);
-                }
-            }
-            if(low!=null & hi!=null) {
-                canvas.drawText(hi, ((bounds.centerX()-bounds.left)/2), bounds.centerY() + bounds.height()/3, mWeatherHiTextPaint);
-                canvas.drawText(low, (bounds.centerX()+(bounds.right-bounds.centerX())/4), bounds.centerY() + bounds.height()/3, mWeatherLoTextPaint);
-            }
+            mRenderer.draw(canvas, bounds, mTime);
         }
 
         /**
@@ -374,52 +276,36 @@ public class MyWatchFace extends CanvasWatchFaceService {
             }
         }
 
-        //Updates the weather data every 30 minutes.
-        private void handleUpdateWeatherMessage() {
-            long delayMs = TimeUnit.MINUTES.toMillis(WEATHER_UPDATE_TIME);
-            releaseGoogleApiClient();
-            mGoogleApiClient.connect();
-            sendUpdateMessage();
-            mUpdateWeatherHandler.sendEmptyMessageDelayed(MSG_UPDATE_WEATHER, delayMs);
-        }
-
-        //function the converts a color image to grayscale.
-        //Find more info here:
-        //http://stackoverflow.com/questions/3373860/convert-a-bitmap-to-grayscale-in-android
-
-        public Bitmap toGrayscale(Bitmap bmpOriginal)
-        {
-            int width, height;
-            height = bmpOriginal.getHeight();
-            width = bmpOriginal.getWidth();
-
-            Bitmap bmpGrayscale = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-            Canvas c = new Canvas(bmpGrayscale);
-            Paint paint = new Paint();
-            ColorMatrix cm = new ColorMatrix();
-            cm.setSaturation(0);
-            ColorMatrixColorFilter f = new ColorMatrixColorFilter(cm);
-            paint.setColorFilter(f);
-            c.drawBitmap(bmpOriginal, 0, 0, paint);
-            return bmpGrayscale;
+        //Sends a message to the mobile device to request an update. Only needed when the data layer
+        //has no weather at all, as the phone pushes every change to the forecast by itself. If no
+        //phone hears it, WatchWeather has the watch face ask again the next time it connects.
+        private void sendUpdateMessage() {
+            Wearable.NodeApi.getConnectedNodes(mGoogleApiClient).setResultCallback(
+                    new ResultCallback<NodeApi.GetConnectedNodesResult>() {
+                        @Override
+                        public void onResult(NodeApi.GetConnectedNodesResult result) {
+                            for (Node node : result.getNodes()) {
+                                Wearable.MessageApi.sendMessage(mGoogleApiClient, node.getId(),
+                                        WatchWeather.REQUEST_PATH, null)
+                                        .setResultCallback(onUpdateMessageSent);
+                            }
+                        }
+                    });
         }
 
-        //Sends a message to the mobile device to request an update.
-        private void sendUpdateMessage() {
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    NodeApi.GetConnectedNodesResult result =
-                            Wearable.NodeApi.getConnectedNodes(mGoogleApiClient).await();
-                    List<Node> nodes = result.getNodes();
-                    if (nodes.size() > 0) {
-                        nodeId = nodes.get(0).getId();
-                        Wearable.MessageApi.sendMessage(mGoogleApiClient, nodeId, MESSAGE, null);
+        private final ResultCallback<MessageApi.SendMessageResult> onUpdateMessageSent =
+                new ResultCallback<MessageApi.SendMessageResult>() {
+                    @Override
+                    public void onResult(MessageApi.SendMessageResult result) {
+                        if (result.getStatus().isSuccess()) {
+                            mWatchWeather.onRequestDelivered();
+                        } else {
+                            Log.w(TAG, "Failed to ask for the weather: " + result.getStatus());
+                        }
                     }
-                }
-            }).start();
-        }
+                };
 
+        //Listens for the weather the phone pushes, and catches up with whatever it pushed last.
         @Override
         public void onConnected(Bundle bundle) {
             Wearable.DataApi.addListener(mGoogleApiClient, onDataChangedListener);
@@ -440,55 +326,56 @@ public class MyWatchFace extends CanvasWatchFaceService {
         private final ResultCallback<DataItemBuffer> onConnectedResultCallback = new ResultCallback<DataItemBuffer>() {
             @Override
             public void onResult(DataItemBuffer dataItems) {
+                DataMap stored = null;
                 for (DataItem item : dataItems) {
-                    if (item.getUri().getPath().compareTo(WEATHER_HI_LOW_PATH)==0) {
-                        DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
-                        String weatherInfo = dataMap.getString(WEATHER_HI_LOW_KEY);
-                        Log.v(TAG, weatherInfo);
-                        String splitWeather[] = weatherInfo.split("\\s+");
-                        hi = splitWeather[0];
-                        low = splitWeather[1];
-                        invalidate();
-                    }
-                    if (item.getUri().getPath().compareTo(WEATHER_IMAGE_PATH)==0) {
-                        DataMapItem dataMapItem = DataMapItem.fromDataItem(item);
-                        Asset profileAsset = dataMapItem.getDataMap().getAsset(WEATHER_IMAGE_KEY);
-                        new getBitmapTask().execute(profileAsset);
+                    if (item.getUri().getPath().equals(WeatherPayload.PATH)) {
+                        stored = DataMapItem.fromDataItem(item).getDataMap();
                     }
                 }
                 dataItems.release();
+                boolean ask = mWatchWeather.onConnected(stored);
+                showWeather();
+                invalidate();
+                if (ask) {
+                    //The phone hasn't pushed anything yet, or nothing this watch face can read.
+                    sendUpdateMessage();
+                }
             }
         };
 
-        private class getBitmapTask extends AsyncTask<Asset, Integer, Bitmap> {
-            protected Bitmap doInBackground(Asset... assets) {
-                Asset asset = assets[0];
-
-                if (asset == null) {
-                    throw new IllegalArgumentException("Asset must be non-null");
-                }
-                ConnectionResult result =
-                        mGoogleApiClient.blockingConnect(30, TimeUnit.MILLISECONDS);
-                if (!result.isSuccess()) {
-                    return null;
-                }
-                // convert asset into a file descriptor and block until it's ready
-                InputStream assetInputStream = Wearable.DataApi.getFdForAsset(
-                        mGoogleApiClient, asset).await().getInputStream();
-                mGoogleApiClient.disconnect();
-
-                if (assetInputStream == null) {
-                    Log.w(TAG, "Requested an unknown Asset.");
-                    return null;
-                }
-                // decode the stream into a bitmap
-                return BitmapFactory.decodeStream(assetInputStream);
+        //Reads the weather the phone sent and shows it, with the watch's own art for it.
+        private void readWeather(DataItem item) {
+            DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
+            if (!mWatchWeather.onWeather(dataMap)) {
+                Log.w(TAG, "Ignoring weather this watch face can't read: " + dataMap);
+                return;
             }
+            showWeather();
+            invalidate();
+        }
 
-            protected void onPostExecute(Bitmap bitmap) {
-                mWeatherIcon = bitmap;
-                invalidate();
+        //Shows the last day of the forecast that has started, formatting it only when it changes.
+        private void showWeather() {
+            WeatherPayload weather = mWatchWeather.getWeather();
+            if (weather == null) {
+                return;
             }
+            if (weather != mWeather) {
+                mWeather = weather;
+                mWeatherDay = -1;
+            }
+            long now = System.currentTimeMillis();
+            int day = 0;
+            while (day + 1 < mWeather.getDayCount() && mWeather.getDate(day + 1) <= now) {
+                day++;
+            }
+            if (day == mWeatherDay) {
+                return;
+            }
+            mWeatherDay = day;
+            String format = getString(R.string.format_temperature);
+            mRenderer.setWeather(String.format(format, mWeather.getHigh(day)),
+                    String.format(format, mWeather.getLow(day)), mWeather.getWeatherId(day));
         }
 
         private final DataApi.DataListener onDataChangedListener = new DataApi.DataListener() {
@@ -498,19 +385,8 @@ public class MyWatchFace extends CanvasWatchFaceService {
                     if (event.getType() == DataEvent.TYPE_CHANGED) {
                         // DataItem changed
                         DataItem item = event.getDataItem();
-                        if (item.getUri().getPath().compareTo(WEATHER_HI_LOW_PATH)==0) {
-                            DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
-                            String weatherInfo = dataMap.getString(WEATHER_HI_LOW_KEY);
-                            Log.v(TAG, weatherInfo);
-                            String splitWeather[] = weatherInfo.split("\\s+");
-                            hi = splitWeather[0];
-                            low = splitWeather[1];
-                            invalidate();
-                        }
-                        if (item.getUri().getPath().compareTo(WEATHER_IMAGE_PATH)==0) {
-                            DataMapItem dataMapItem = DataMapItem.fromDataItem(item);
-                            Asset profileAsset = dataMapItem.getDataMap().getAsset(WEATHER_IMAGE_KEY);
-                            new getBitmapTask().execute(profileAsset);
+                        if (item.getUri().getPath().equals(WeatherPayload.PATH)) {
+                            readWeather(item);
                         }
                     }
                 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.text.format.Time;
+
+/**
+ * Draws MyWatchFace: the time, and the weather the phone sent.
+ *
+ * {@link #draw} runs every second, and every minute in ambient mode, so it allocates nothing.
+ * Everything it draws is worked out when it changes instead: the icon and its ambient variants
+ * once per change of weather, the temperatures by whoever sets them, and the time into a char
+ * buffer that is reused for every frame.
+ */
+class WatchFaceRenderer {
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create("sans-serif-condensed-light", Typeface.NORMAL);
+
+    // Pixels at least this opaque are lit in low-bit ambient mode, and the rest are left dark.
+    private static final int LOW_BIT_ALPHA_THRESHOLD = 0x80;
+
+    private final Resources mResources;
+    private final Paint mBackgroundPaint;
+    private final Paint mTextPaint;
+    private final Paint mWeatherHiTextPaint;
+    private final Paint mWeatherLoTextPaint;
+    private final Paint mLinePaint;
+
+    // Long enough for H:MM:SS with a two digit hour
+    final char[] mTimeText = new char[8];
+
+    private String mHigh;
+    private String mLow;
+    private int mWeatherId = -1;
+    private Bitmap mWeatherIcon;
+    // The icon in grayscale, for ambient mode
+    private Bitmap mAmbientWeatherIcon;
+    // The icon as a white silhouette without partial alpha, for low-bit ambient mode; made when
+    // first needed
+    private Bitmap mLowBitWeatherIcon;
+
+    private boolean mAmbient;
+    private boolean mLowBitAmbient;
+
+    WatchFaceRenderer(Resources resources) {
+        mResources = resources;
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(resources.getColor(R.color.background));
+        mTextPaint = createTextPaint(resources.getColor(R.color.digital_text));
+        mWeatherHiTextPaint = createTextPaint(resources.getColor(R.color.digital_text));
+        mWeatherLoTextPaint = createTextPaint(resources.getColor(R.color.weather_low_color));
+        mLinePaint = createTextPaint(resources.getColor(R.color.line_color));
+        applyWindowInsets(false);
+    }
+
+    private static Paint createTextPaint(int textColor) {
+        Paint paint = new Paint();
+        paint.setColor(textColor);
+        paint.setTypeface(NORMAL_TYPEFACE);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    /**
+     * Loads the text sizes, which differ for round watches.
+     */
+    void applyWindowInsets(boolean isRound) {
+        mTextPaint.setTextSize(mResources.getDimension(isRound
+                ? R.dimen.digital_text_size_round : R.dimen.digital_text_size));
+        mWeatherLoTextPaint.setTextSize(mResources.getDimension(isRound
+                ? R.dimen.weather__low_text_size_round : R.dimen.weather_low_text_size));
+        mWeatherHiTextPaint.setTextSize(mResources.getDimension(isRound
+                ? R.dimen.weather__hi_text_size_round : R.dimen.weather_hi_text_size));
+    }
+
+    /**
+     * @param lowBitAmbient whether the display supports fewer bits for each color in ambient
+     *                      mode, in which case nothing is anti-aliased in ambient mode.
+     */
+    void setLowBitAmbient(boolean lowBitAmbient) {
+        mLowBitAmbient = lowBitAmbient;
+        updateAntiAlias();
+        prepareAmbientIcon();
+    }
+
+    void setAmbient(boolean ambient) {
+        mAmbient = ambient;
+        updateAntiAlias();
+        prepareAmbientIcon();
+    }
+
+    private void updateAntiAlias() {
+        boolean antiAlias = !(mAmbient && mLowBitAmbient);
+        mTextPaint.setAntiAlias(antiAlias);
+        mWeatherHiTextPaint.setAntiAlias(antiAlias);
+        mWeatherLoTextPaint.setAntiAlias(antiAlias);
+        mLinePaint.setAntiAlias(antiAlias);
+    }
+
+    /**
+     * Shows this weather, loading its art only if the weather changed.
+     *
+     * @param high the formatted high, or null to show none.
+     * @param low  the formatted low, or null to show none.
+     */
+    void setWeather(String high, String low, int weatherId) {
+        mHigh = high;
+        mLow = low;
+        if (weatherId == mWeatherId) {
+            return;
+        }
+        mWeatherId = weatherId;
+        int art = WeatherIcons.getWatchArt(weatherId);
+        int ambientArt = WeatherIcons.getWatchAmbientArt(weatherId);
+        mWeatherIcon = art == -1 ? null : BitmapFactory.decodeResource(mResources, art);
+        mAmbientWeatherIcon = ambientArt == -1
+                ? null : BitmapFactory.decodeResource(mResources, ambientArt);
+        mLowBitWeatherIcon = null;
+        prepareAmbientIcon();
+    }
+
+    /*
+        Makes the low-bit silhouette, if the watch is about to need it, so that draw doesn't.
+     */
+    private void prepareAmbientIcon() {
+        if (mAmbient && mLowBitAmbient && mLowBitWeatherIcon == null
+                && mAmbientWeatherIcon != null) {
+            mLowBitWeatherIcon = toLowBit(mAmbientWeatherIcon);
+        }
+    }
+
+    private static Bitmap toLowBit(Bitmap icon) {
+        int width = icon.getWidth();
+        int height = icon.getHeight();
+        int[] pixels = new int[width * height];
+        icon.getPixels(pixels, 0, width, 0, 0, width, height);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = Color.alpha(pixels[i]) >= LOW_BIT_ALPHA_THRESHOLD
+                    ? Color.WHITE : Color.TRANSPARENT;
+        }
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    Bitmap getIcon() {
+        if (!mAmbient) {
+            return mWeatherIcon;
+        }
+        return mLowBitAmbient ? mLowBitWeatherIcon : mAmbientWeatherIcon;
+    }
+
+    void draw(Canvas canvas, Rect bounds, Time time) {
+        // Draw the background.
+        if (mAmbient) {
+            canvas.drawColor(Color.BLACK);
+        } else {
+            canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+        }
+        // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
+        int length = formatTime(time, !mAmbient);
+        canvas.drawText(mTimeText, 0, length,
+                bounds.centerX() - mTextPaint.measureText(mTimeText, 0, length) / 2,
+                bounds.centerY() - 60, mTextPaint);
+        canvas.drawLine(bounds.centerX() - mTextPaint.getTextSize(), bounds.centerY() - 50,
+                bounds.centerX() + mTextPaint.getTextSize(), bounds.centerY() - 50, mLinePaint);
+
+        Bitmap icon = getIcon();
+        if (icon != null) {
+            canvas.drawBitmap(icon, canvas.getWidth() / 2 - icon.getWidth() / 2,
+                    canvas.getHeight() / 2 - icon.getWidth() / 2, mTextPaint);
+            canvas.drawLine(bounds.centerX(), bounds.centerY() + icon.getHeight() / 2,
+                    bounds.centerX(), bounds.bottom - 10, mLinePaint);
+        }
+        if (mLow != null && mHigh != null) {
+            canvas.drawText(mHigh, (bounds.centerX() - bounds.left) / 2,
+                    bounds.centerY() + bounds.height() / 3, mWeatherHiTextPaint);
+            canvas.drawText(mLow, bounds.centerX() + (bounds.right - bounds.centerX()) / 4,
+                    bounds.centerY() + bounds.height() / 3, mWeatherLoTextPaint);
+        }
+    }
+
+    /*
+        Writes the time into mTimeText, as String.format("%d:%02d:%02d") would, and returns how
+        many chars it took.
+     */
+    int formatTime(Time time, boolean seconds) {
+        int length = 0;
+        if (time.hour >= 10) {
+            mTimeText[length++] = (char) ('0' + time.hour / 10);
+        }
+        mTimeText[length++] = (char) ('0' + time.hour % 10);
+        length = appendTwoDigits(length, time.minute);
+        if (seconds) {
+            length = appendTwoDigits(length, time.second);
+        }
+        return length;
+    }
+
+    private int appendTwoDigits(int length, int value) {
+        mTimeText[length++] = ':';
+        mTimeText[length++] = (char) ('0' + value / 10);
+        mTimeText[length++] = (char) ('0' + value % 10);
+        return length;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+/**
+ * The art the watch face draws for each weather id.  The phone only sends weather ids, and the
+ * art is built into the watch face at the size it's drawn at by gradle/prescale-art.gradle, so no
+ * picture has to cross the link.
+ *
+ * Which ids share art comes from {@link WeatherKinds}, the same table the phone uses, so the
+ * watch shows the same art as the phone.
+ */
+final class WeatherIcons {
+    // these are indexed by kind, as in WeatherKinds
+    private static final int[] WATCH_ART = {
+            R.drawable.art_storm_watch,
+            R.drawable.art_light_rain_watch,
+            R.drawable.art_rain_watch,
+            R.drawable.art_snow_watch,
+            R.drawable.art_fog_watch,
+            R.drawable.art_storm_watch,
+            R.drawable.art_clear_watch,
+            R.drawable.art_light_clouds_watch,
+            R.drawable.art_clouds_watch
+    };
+
+    // Already in grayscale, for ambient mode
+    private static final int[] WATCH_AMBIENT_ART = {
+            R.drawable.art_storm_watch_ambient,
+            R.drawable.art_light_rain_watch_ambient,
+            R.drawable.art_rain_watch_ambient,
+            R.drawable.art_snow_watch_ambient,
+            R.drawable.art_fog_watch_ambient,
+            R.drawable.art_storm_watch_ambient,
+            R.drawable.art_clear_watch_ambient,
+            R.drawable.art_light_clouds_watch_ambient,
+            R.drawable.art_clouds_watch_ambient
+    };
+
+    private WeatherIcons() {
+    }
+
+    /**
+     * @return the watch sized art for the weather, or -1 if there isn't any.
+     */
+    static int getWatchArt(int weatherId) {
+        int kind = WeatherKinds.getKind(weatherId);
+        return kind == WeatherKinds.NONE ? -1 : WATCH_ART[kind];
+    }
+
+    /**
+     * @return the watch sized art for the weather in grayscale, or -1 if there isn't any.
+     */
+    static int getWatchAmbientArt(int weatherId) {
+        int kind = WeatherKinds.getKind(weatherId);
+        return kind == WeatherKinds.NONE ? -1 : WATCH_AMBIENT_ART[kind];
+    }
+}